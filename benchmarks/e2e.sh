@@ -0,0 +1,9 @@
+#!/bin/sh
+# 构建并运行端到端基准（bench.EndToEnd），参数原样传入。
+# 报告同时写到 results/e2e-<提交>.txt
+set -e
+cd "$(dirname "$0")"
+mvn -q -B package
+mkdir -p results
+out="results/e2e-$(git rev-parse --short HEAD 2>/dev/null || echo local).txt"
+java -cp target/benchmarks.jar bench.EndToEnd --report "$out" "$@"
@@ -0,0 +1,10 @@
+#!/bin/sh
+# 构建并运行基准，参数原样传给 JMH（如基准类名、-p entries=500）。
+# 结果以 JSON 写入 results/<提交>.json，不同提交的结果可以直接对比
+set -e
+cd "$(dirname "$0")"
+mvn -q -B package
+mkdir -p results
+out="results/$(git rev-parse --short HEAD 2>/dev/null || echo local).json"
+java -jar target/benchmarks.jar -rf json -rff "$out" "$@"
+echo "results: $out"
@@ -0,0 +1,91 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * cat 一个大文件的耗时：进程内 Cat（FileChannel.transferTo）对比启动 /bin/cat 再经 DealProcessStream 转发的原路径，
+ * 以及启动 /bin/cat 并把 stdout 直接交给目标文件（不经 JVM 转发）。
+ * 目标为 /dev/null 时只比较读取与转发的开销，为 file 时包含写盘。
+ *
+ * <pre>
+ * cd benchmarks &amp;&amp; mvn -q package &amp;&amp; java -jar target/benchmarks.jar CatBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CatBenchmark {
+
+    @Param({"1024"})
+    int sizeMb;
+
+    @Param({"devnull", "file"})
+    String target;
+
+    private File input;
+
+    private File output;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        input = File.createTempFile("cat-bench", ".in");
+        input.deleteOnExit();
+        try (InputStream in = Streams.synthetic((long) sizeMb * 1024 * 1024, 80);
+             OutputStream out = new FileOutputStream(input)) {
+            in.transferTo(out);
+        }
+        if ("devnull".equals(target)) {
+            output = new File("/dev/null");
+        } else {
+            output = File.createTempFile("cat-bench", ".out");
+            output.deleteOnExit();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(input.toPath());
+        if (!"devnull".equals(target)) {
+            Files.deleteIfExists(output.toPath());
+        }
+    }
+
+    @Benchmark
+    public int builtin() throws IOException {
+        return Shell.cat(input.getPath(), output);
+    }
+
+    /**
+     * 原路径：子进程 stdout 为管道，由 shell 读出后再写往目标。
+     */
+    @Benchmark
+    public int processPumped() throws IOException, InterruptedException {
+        Process process = new ProcessBuilder("cat", input.getPath()).redirectErrorStream(true).start();
+        try (OutputStream out = new FileOutputStream(output)) {
+            Shell.newPump(process.getInputStream(), out).run();
+        }
+        return process.waitFor();
+    }
+
+    /**
+     * 子进程直接写目标文件，只剩下 fork/exec 的开销。
+     */
+    @Benchmark
+    public int processRedirected() throws IOException, InterruptedException {
+        return new ProcessBuilder("cat", input.getPath())
+                .redirectOutput(ProcessBuilder.Redirect.to(output))
+                .start()
+                .waitFor();
+    }
+}
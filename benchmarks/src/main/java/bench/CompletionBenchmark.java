@@ -0,0 +1,81 @@
+package bench;
+
+import org.jline.reader.Candidate;
+import org.jline.reader.LineReader;
+import org.jline.reader.LineReaderBuilder;
+import org.jline.reader.ParsedLine;
+import org.jline.reader.Widget;
+import org.jline.reader.impl.completer.StringsCompleter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tab 补全：JLine 的 StringsCompleter 生成候选，以及自定义的 DoubleTabWidget 按前缀过滤并补全。
+ * 命令名规模对应小型系统、普通开发机和装满工具链的机器。
+ *
+ * <pre>
+ * cd benchmarks &amp;&amp; ./run.sh CompletionBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompletionBenchmark {
+
+    @Param({"1000", "20000", "200000"})
+    int names;
+
+    // "g" 匹配约 1/26 的命令名；"git-" 只匹配少量命令名
+    @Param({"g", "git-"})
+    String prefix;
+
+    private NavigableSet<String> commands;
+
+    private LineReader reader;
+
+    private ParsedLine parsedLine;
+
+    private StringsCompleter completer;
+
+    private Widget widget;
+
+    @Setup
+    public void setUp() {
+        commands = new TreeSet<>();
+        for (int i = 0; i < names; i++) {
+            // 首字母均匀分布，另有约 1% 以 git- 开头
+            String name = i % 100 == 0 ? "git-" + Integer.toString(i, 36) : (char) ('a' + i % 26) + Integer.toString(i, 36);
+            commands.add(name);
+        }
+        reader = LineReaderBuilder.builder().terminal(Readers.dumbTerminal()).build();
+        parsedLine = reader.getParser().parse(prefix, prefix.length());
+        completer = new StringsCompleter(() -> commands);
+        widget = Shell.newDoubleTabWidget(reader, () -> commands);
+    }
+
+    @Benchmark
+    public List<Candidate> stringsCompleter() {
+        List<Candidate> candidates = new ArrayList<>();
+        completer.complete(reader, parsedLine, candidates);
+        return candidates;
+    }
+
+    /**
+     * 每次都从只含前缀的行开始按一次 Tab。
+     */
+    @Benchmark
+    public String doubleTabWidget() {
+        reader.getBuffer().clear();
+        reader.getBuffer().write(prefix);
+        widget.apply();
+        return reader.getBuffer().toString();
+    }
+}
@@ -0,0 +1,252 @@
+package bench;
+
+import java.io.*;
+import java.nio.file.DirectoryStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 端到端基准：通过管道驱动一个真实的 shell 进程（-i 强制交互模式，保留提示符与 JLine 的读取路径），从写入一行命令到下一个提示符出现计时，
+ * 覆盖读取、解析、执行和输出的完整循环。测量三类数据：
+ * <ul>
+ *     <li>单条命令的延迟（p50/p99）：内建命令对比外部命令</li>
+ *     <li>管道吞吐量（MB/s）</li>
+ *     <li>重定向写入吞吐量：大文件的 &gt; 与 &gt;&gt;，以及大量小的 echo &gt;&gt;</li>
+ * </ul>
+ * 只依赖 Linux 上的 coreutils，不需要网络。结果以文本报告输出，作为改动 Main、Pipeline、DealProcessStream 前后的对照。
+ *
+ * <pre>
+ * cd benchmarks &amp;&amp; ./e2e.sh [--iterations 200] [--size-mb 256] [--report FILE]
+ * </pre>
+ */
+public final class EndToEnd {
+
+    private static final byte[] PROMPT = "$ ".getBytes(StandardCharsets.UTF_8);
+
+    private int iterations = 200;
+
+    private int sizeMb = 256;
+
+    private String report;
+
+    private final List<String> lines = new ArrayList<>();
+
+    private EndToEnd() {}
+
+    public static void main(String[] args) throws Exception {
+        EndToEnd harness = new EndToEnd();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--iterations":
+                    harness.iterations = Integer.parseInt(args[++i]);
+                    break;
+                case "--size-mb":
+                    harness.sizeMb = Integer.parseInt(args[++i]);
+                    break;
+                case "--report":
+                    harness.report = args[++i];
+                    break;
+                default:
+                    System.err.println("usage: EndToEnd [--iterations N] [--size-mb N] [--report FILE]");
+                    System.exit(2);
+            }
+        }
+        harness.run();
+    }
+
+    private void run() throws Exception {
+        Path dir = Files.createTempDirectory("shell-e2e");
+        Path input = dir.resolve("input");
+        Path output = dir.resolve("output");
+        try (InputStream in = Streams.synthetic((long) sizeMb * 1024 * 1024, 80);
+             OutputStream out = Files.newOutputStream(input)) {
+            in.transferTo(out);
+        }
+        try (Session shell = new Session(dir)) {
+            print("shell e2e  iterations=%d  size=%d MB  java=%s", iterations, sizeMb, System.getProperty("java.version"));
+            print("");
+            print("startup (process start to first prompt)   %8.1f ms", shell.startupNanos / 1e6);
+            print("");
+
+            print("%-40s %10s %10s %10s", "command latency", "p50 us", "p99 us", "max us");
+            latency(shell, "builtin   echo hello", "echo hello");
+            latency(shell, "builtin   pwd", "pwd");
+            latency(shell, "builtin   cat small file", "cat " + shell.small);
+            latency(shell, "external  /bin/echo hello", "/bin/echo hello");
+            latency(shell, "external  true", "true");
+            latency(shell, "pipeline  echo hello | cat -u", "echo hello | cat -u");
+            latency(shell, "pipeline  true | true | true", "true | true | true");
+            print("");
+
+            print("%-40s %10s %10s", "pipeline throughput", "MB/s", "best MB/s");
+            throughput(shell, "cat FILE | wc -c", "cat " + input + " | wc -c", null);
+            throughput(shell, "cat -u FILE | wc -c", "cat -u " + input + " | wc -c", null);
+            throughput(shell, "head -c N /dev/zero | wc -c", "head -c " + ((long) sizeMb << 20) + " /dev/zero | wc -c", null);
+            throughput(shell, "cat FILE | cat -u | cat -u > OUT", "cat " + input + " | cat -u | cat -u > " + output, output);
+            print("");
+
+            print("%-40s %10s %10s", "redirect throughput", "MB/s", "best MB/s");
+            throughput(shell, "cat FILE > OUT", "cat " + input + " > " + output, output);
+            throughput(shell, "cat FILE >> OUT", "cat " + input + " >> " + output, output);
+            throughput(shell, "cat -u FILE > OUT", "cat -u " + input + " > " + output, output);
+            smallWrites(shell, output);
+        } finally {
+            Files.deleteIfExists(input);
+            Files.deleteIfExists(output);
+            try (DirectoryStream<Path> rest = Files.newDirectoryStream(dir)) {
+                for (Path path : rest) {
+                    Files.deleteIfExists(path);
+                }
+            }
+            Files.deleteIfExists(dir);
+        }
+        if (report != null) {
+            Files.write(Path.of(report), lines);
+            System.out.println("report: " + report);
+        }
+    }
+
+    private void latency(Session shell, String label, String command) throws IOException {
+        int warmup = Math.max(10, iterations / 10);
+        for (int i = 0; i < warmup; i++) {
+            shell.run(command);
+        }
+        long[] samples = new long[iterations];
+        for (int i = 0; i < iterations; i++) {
+            samples[i] = shell.run(command);
+        }
+        Arrays.sort(samples);
+        print("%-40s %10.1f %10.1f %10.1f", label, percentile(samples, 50) / 1e3, percentile(samples, 99) / 1e3,
+              samples[samples.length - 1] / 1e3);
+    }
+
+    // 大数据量的命令每项只跑少量几次，报告中位数与最好成绩
+    private void throughput(Session shell, String label, String command, Path output) throws IOException {
+        int rounds = 5;
+        shell.run(command);
+        long[] samples = new long[rounds];
+        for (int i = 0; i < rounds; i++) {
+            if (output != null) {
+                Files.deleteIfExists(output);
+            }
+            samples[i] = shell.run(command);
+        }
+        Arrays.sort(samples);
+        print("%-40s %10.1f %10.1f", label, mbPerSecond(percentile(samples, 50)), mbPerSecond(samples[0]));
+    }
+
+    // 大量小文件写入，即脚本里最常见的 echo ... >> log
+    private void smallWrites(Session shell, Path output) throws IOException {
+        String command = "echo a short log line of about fifty bytes......... >> " + output;
+        Files.deleteIfExists(output);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations * 10; i++) {
+            shell.run(command);
+        }
+        long elapsed = System.nanoTime() - start;
+        double perSecond = iterations * 10 / (elapsed / 1e9);
+        print("%-40s %10.3f MB/s %8.0f commands/s", "echo LINE >> OUT (x" + iterations * 10 + ")",
+              Files.size(output) / (elapsed / 1e9) / (1 << 20), perSecond);
+    }
+
+    private double mbPerSecond(long nanos) {
+        return sizeMb / (nanos / 1e9);
+    }
+
+    private static long percentile(long[] sorted, int p) {
+        int index = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private void print(String format, Object... args) {
+        String line = String.format(Locale.ROOT, format, args);
+        lines.add(line);
+        System.out.println(line);
+    }
+
+    /**
+     * 一个 shell 进程。stdin/stdout 都是管道，命令逐行写入，读到下一个提示符即认为命令结束。
+     */
+    private static final class Session implements Closeable {
+
+        private final Process process;
+
+        private final OutputStream stdin;
+
+        private final InputStream stdout;
+
+        private final long startupNanos;
+
+        // 用于 "cat 小文件" 的延迟测试
+        private final String small;
+
+        Session(Path dir) throws IOException {
+            Path smallFile = dir.resolve("small");
+            Files.write(smallFile, Collections.singletonList("hello"));
+            small = smallFile.toString();
+            String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+            // shell 在临时目录中运行，类路径需要转成绝对路径
+            StringBuilder classpath = new StringBuilder();
+            for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+                if (classpath.length() > 0) {
+                    classpath.append(File.pathSeparator);
+                }
+                classpath.append(new File(entry).getAbsolutePath());
+            }
+            ProcessBuilder builder = new ProcessBuilder(java, "-cp", classpath.toString(), "Main", "-i")
+                    .directory(dir.toFile())
+                    .redirectError(ProcessBuilder.Redirect.DISCARD);
+            // 历史写到临时目录，不影响使用者自己的历史文件
+            builder.environment().put("HISTFILE", dir.resolve("history").toString());
+            long start = System.nanoTime();
+            process = builder.start();
+            stdin = process.getOutputStream();
+            stdout = new BufferedInputStream(process.getInputStream());
+            awaitPrompt();
+            startupNanos = System.nanoTime() - start;
+        }
+
+        /**
+         * @return 从写入命令到下一个提示符出现的纳秒数
+         */
+        long run(String command) throws IOException {
+            long start = System.nanoTime();
+            stdin.write((command + "\n").getBytes(StandardCharsets.UTF_8));
+            stdin.flush();
+            awaitPrompt();
+            return System.nanoTime() - start;
+        }
+
+        private void awaitPrompt() throws IOException {
+            int matched = 0;
+            while (matched < PROMPT.length) {
+                int b = stdout.read();
+                if (b == -1) {
+                    throw new EOFException("shell exited");
+                }
+                matched = b == PROMPT[matched] ? matched + 1 : b == PROMPT[0] ? 1 : 0;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            stdin.write("exit\n".getBytes(StandardCharsets.UTF_8));
+            stdin.close();
+            try {
+                if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                process.destroyForcibly();
+            }
+        }
+    }
+}
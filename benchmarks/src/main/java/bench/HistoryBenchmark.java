@@ -0,0 +1,134 @@
+package bench;
+
+import org.jline.reader.History;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CustomHistory 的热点：提示符下每条命令的 add，启动时的 load（内存容量与文件行数相同，或为默认的 500 条），history -r 的 read（含去重），以及历史文件超长时的 trimHistory。
+ * add 为平均耗时；其余每次调用都要重新准备文件，使用单次计时。
+ *
+ * <pre>
+ * cd benchmarks &amp;&amp; ./run.sh HistoryBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class HistoryBenchmark {
+
+    @Param({"500", "10000", "100000"})
+    int entries;
+
+    private Path dir;
+
+    // HISTORY_FILE，load 从这里读
+    private Path historyFile;
+
+    private String[] lines;
+
+    private History history;
+
+    // 同一个文件，内存中只保留默认的 500 条：load 只需读文件末尾
+    private History defaultSizeHistory;
+
+    private int counter;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("history-bench");
+        historyFile = dir.resolve("history");
+        lines = Readers.commandLines(entries);
+        Files.write(historyFile, Arrays.asList(lines));
+        history = Shell.newHistory();
+        Readers.withHistory(history, historyFile, entries);
+        history.load();
+        defaultSizeHistory = Shell.newHistory();
+        Readers.withHistory(defaultSizeHistory, historyFile, 500);
+    }
+
+    /**
+     * history -r 读取、trimHistory 截断的另一个文件，每次调用前重写。
+     * 单独作为一个 State，只有用到它的基准才付出每次写文件的代价，add 的计时不受写文件产生的垃圾影响。
+     */
+    @State(Scope.Thread)
+    public static class OtherFile {
+        private Path path;
+
+        @Setup(Level.Invocation)
+        public void write(HistoryBenchmark benchmark) throws IOException {
+            path = benchmark.dir.resolve("other");
+            Files.write(path, Arrays.asList(benchmark.lines));
+        }
+
+        @TearDown(Level.Trial)
+        public void delete() throws IOException {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(historyFile);
+        Files.deleteIfExists(dir);
+    }
+
+    /**
+     * 历史已满时再加一条，会淘汰最早的一条。
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int add() {
+        history.add("echo " + counter++);
+        return history.size();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    public int load() throws IOException {
+        history.load();
+        return history.size();
+    }
+
+    /**
+     * 启动时的情形：历史文件有 entries 行，HISTORY_SIZE 为默认的 500。
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    public int loadDefaultSize() throws IOException {
+        defaultSizeHistory.load();
+        return defaultSizeHistory.size();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    public int read(OtherFile otherFile) throws IOException {
+        history.read(otherFile.path, false);
+        return history.size();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    public int readDeduplicated(OtherFile otherFile) throws IOException {
+        history.read(otherFile.path, true);
+        return history.size();
+    }
+
+    /**
+     * 截断到一半，同时去掉重复的行。
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    public long trimHistory(OtherFile otherFile) throws IOException {
+        Shell.trimHistory(history, otherFile.path, entries / 2);
+        return Files.size(otherFile.path);
+    }
+}
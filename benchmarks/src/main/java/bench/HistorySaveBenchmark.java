@@ -0,0 +1,65 @@
+package bench;
+
+import org.jline.reader.History;
+import org.jline.reader.LineReader;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 提示符下每条命令的 add：HISTORY_INCREMENTAL 下随即追加到历史文件。
+ * async=true 为后台写入（只入队），false 为 -Dshell.history.async=false 的同步追加；
+ * 历史文件按默认的 10000 条截断，截断的开销也分摊在其中。
+ *
+ * <pre>
+ * cd benchmarks &amp;&amp; ./run.sh HistorySaveBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HistorySaveBenchmark {
+
+    @Param({"true", "false"})
+    String async;
+
+    private Path dir;
+
+    private Path historyFile;
+
+    private History history;
+
+    private int counter;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("history-save-bench");
+        historyFile = dir.resolve("history");
+        // CustomHistory 在构造时决定是否后台写入
+        System.setProperty("shell.history.async", async);
+        history = Shell.newHistory();
+        LineReader reader = Readers.withHistory(history, historyFile, 500);
+        reader.setVariable(LineReader.HISTORY_FILE_SIZE, 10000);
+        history.load();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Shell.flushHistory(history);
+        Files.deleteIfExists(historyFile);
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public int add() {
+        history.add(Instant.now(), "echo " + counter++);
+        return history.size();
+    }
+}
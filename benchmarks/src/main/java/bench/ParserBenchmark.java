@@ -0,0 +1,58 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 输入行的词法与语法分析（Lexer + Parser）：普通短命令、引号与转义密集的命令，以及 100 KB 的超长行。
+ *
+ * <pre>
+ * cd benchmarks &amp;&amp; ./run.sh ParserBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark {
+
+    private static final String SHORT = "ls -la /tmp";
+
+    private static final String QUOTED =
+            "echo \"hello  world\" 'it''s' a\\ b \"x\\\"y\\\\z\" 'don\"t' | grep -v 'a|b' > \"out file.txt\" 2>> err.log";
+
+    @Param({"short", "quoted", "long"})
+    String input;
+
+    private String line;
+
+    private final MethodHandle parse = Shell.parser();
+
+    @Setup
+    public void setUp() {
+        switch (input) {
+            case "short":
+                line = SHORT;
+                break;
+            case "quoted":
+                line = QUOTED;
+                break;
+            default:
+                // 约 100 KB：引号参数与管道交替
+                StringBuilder sb = new StringBuilder("echo");
+                while (sb.length() < 100 * 1024) {
+                    sb.append(" \"arg with spaces\" 'single' plain\\ escaped | cat");
+                }
+                line = sb.toString();
+        }
+    }
+
+    @Benchmark
+    public Object parse() throws Throwable {
+        return parse.invoke(line);
+    }
+}
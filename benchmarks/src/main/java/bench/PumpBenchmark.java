@@ -0,0 +1,76 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 子进程输出转发吞吐量：按字节转发的 DealProcessStream 对比原先按行解码再 println 的实现。
+ * 每次调用转发 chunkMb MB，每轮迭代 10 秒，累计即为数 GB；结果中的 megabytes 一列即 MB/s。
+ *
+ * <pre>
+ * cd benchmarks &amp;&amp; mvn -q package &amp;&amp; java -jar target/benchmarks.jar PumpBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class PumpBenchmark {
+
+    // 80 为普通文本行，1 MB 一行模拟超长行/无换行的二进制输出
+    @Param({"80", "1048576"})
+    int lineLength;
+
+    @Param({"256"})
+    int chunkMb;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Throughput {
+        public double megabytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            megabytes = 0;
+        }
+    }
+
+    private PrintStream out;
+
+    @Setup
+    public void setUp() {
+        // 与 System.out 一样是自动 flush 的 PrintStream
+        out = new PrintStream(Streams.discard(), true);
+    }
+
+    private InputStream childOutput() {
+        return Streams.synthetic((long) chunkMb * 1024 * 1024, lineLength);
+    }
+
+    @Benchmark
+    public void bytePump(Throughput throughput) {
+        Shell.newPump(childOutput(), out).run();
+        throughput.megabytes += chunkMb;
+    }
+
+    /**
+     * 原 DealProcessStream.run 的实现，作为对照。
+     */
+    @Benchmark
+    public void linePump(Throughput throughput) throws IOException {
+        BufferedReader br = new BufferedReader(new InputStreamReader(childOutput()));
+        String line;
+        while ((line = br.readLine()) != null) {
+            out.println(line);
+        }
+        throughput.megabytes += chunkMb;
+    }
+}
@@ -0,0 +1,64 @@
+package bench;
+
+import org.jline.reader.History;
+import org.jline.reader.LineReader;
+import org.jline.reader.LineReaderBuilder;
+import org.jline.terminal.Terminal;
+import org.jline.terminal.TerminalBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+
+/**
+ * 基准用的 LineReader：输入为空、输出丢弃的哑终端，历史相关变量按需设置。
+ */
+final class Readers {
+
+    private Readers() {}
+
+    static Terminal dumbTerminal() {
+        try {
+            return TerminalBuilder.builder()
+                                  .dumb(true)
+                                  .streams(new ByteArrayInputStream(new byte[0]), Streams.discard())
+                                  .build();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param historyFile 历史文件，可以为 null
+     * @param size        内存中和文件中保留的历史条数
+     */
+    static LineReader withHistory(History history, Path historyFile, int size) {
+        LineReaderBuilder builder = LineReaderBuilder.builder()
+                                                     .terminal(dumbTerminal())
+                                                     .history(history)
+                                                     .variable(LineReader.HISTORY_SIZE, size)
+                                                     .variable(LineReader.HISTORY_FILE_SIZE, size);
+        if (historyFile != null) {
+            builder.variable(LineReader.HISTORY_FILE, historyFile);
+        }
+        LineReader reader = builder.build();
+        // LineReader 只在 readLine 时才 attach 历史，基准中不会调用 readLine
+        history.attach(reader);
+        return reader;
+    }
+
+    /**
+     * 生成 count 行命令，约四分之一互不相同，其余是重复（与真实历史相近）。
+     */
+    static String[] commandLines(int count) {
+        String[] verbs = {"ls -la", "cd ", "git status", "grep -rn foo ", "cat ", "vim ", "echo \"hello world\" > "};
+        int distinct = Math.max(1, count / 4);
+        String[] lines = new String[count];
+        for (int i = 0; i < count; i++) {
+            int k = (int) ((i * 2654435761L) % distinct);
+            lines[i] = verbs[k % verbs.length] + "src/main/java/File" + k + ".java";
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,71 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 内建命令的输出重定向：echo hello &gt; file 写一个小文件的耗时，以及写入大量行时的吞吐。
+ * 对照组 spawnEcho 为原先的做法，即启动外部 echo 并把 stdout 重定向到文件。
+ *
+ * <pre>
+ * cd benchmarks &amp;&amp; mvn -q package &amp;&amp; java -jar target/benchmarks.jar RedirectBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RedirectBenchmark {
+
+    // 每个参数组合在单独的 JVM 中运行，因此可以在 ShellOutput 加载前设置系统属性
+    @State(Scope.Thread)
+    public static class Sink {
+        @Param({"buffered", "mmap"})
+        String mode;
+
+        @Param({"1", "100000"})
+        int lines;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            System.setProperty("shell.redirect.mmap", String.valueOf("mmap".equals(mode)));
+        }
+    }
+
+    private File output;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        output = File.createTempFile("redirect-bench", ".out");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(output.toPath());
+    }
+
+    @Benchmark
+    public long builtin(Sink sink) {
+        try (PrintStream out = Shell.openRedirect(output, false)) {
+            for (int i = 0; i < sink.lines; i++) {
+                out.println("hello");
+            }
+        }
+        return output.length();
+    }
+
+    @Benchmark
+    public int spawnEcho() throws IOException, InterruptedException {
+        return new ProcessBuilder("echo", "hello")
+                .redirectOutput(ProcessBuilder.Redirect.to(output))
+                .start()
+                .waitFor();
+    }
+}
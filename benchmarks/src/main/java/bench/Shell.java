@@ -0,0 +1,184 @@
+package bench;
+
+import org.jline.reader.History;
+import org.jline.reader.LineReader;
+import org.jline.reader.Widget;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.function.Supplier;
+
+/**
+ * shell 的类都在默认包里，命名包中无法直接 import，这里统一通过反射取得。
+ */
+final class Shell {
+
+    private Shell() {}
+
+    static Class<?> type(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static Runnable newPump(InputStream in, OutputStream out) {
+        try {
+            return (Runnable) type("DealProcessStream").getConstructor(InputStream.class, OutputStream.class)
+                                                         .newInstance(in, out);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 用进程内的 Cat 把 file 写入 out。
+     *
+     * @return cat 的退出码
+     */
+    static int cat(String file, File out) {
+        try {
+            Object sink = openRedirect(out, false);
+            Object cat = type("Cat").getConstructor().newInstance();
+            Method execute = type("Builtin").getMethod("execute", List.class, InputStream.class, PrintStream.class, PrintStream.class);
+            try (PrintStream target = (PrintStream) sink) {
+                return (Integer) execute.invoke(cat, Collections.singletonList(file), InputStream.nullInputStream(), target, System.err);
+            }
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 以内建命令重定向的方式打开文件，返回 ShellOutput。
+     */
+    static PrintStream openRedirect(File file, boolean append) {
+        try {
+            return (PrintStream) type("ShellOutput").getMethod("toFile", File.class, boolean.class).invoke(null, file, append);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Parser.parse，返回 CommandLine。
+     */
+    static MethodHandle parser() {
+        try {
+            return MethodHandles.publicLookup().findStatic(type("Parser"), "parse", MethodType.methodType(type("CommandLine"), String.class));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * ProcessLauncher.posixSpawn(builders, paths)，返回 List&lt;Process&gt;，无法用 posix_spawn 启动时返回 null。
+     */
+    static MethodHandle posixSpawn() {
+        try {
+            return MethodHandles.publicLookup().findStatic(type("ProcessLauncher"), "posixSpawn",
+                    MethodType.methodType(List.class, List.class, List.class));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * CommandStats.record(command, parseNanos, pipeline, runNanos)。
+     */
+    static MethodHandle recordStats() {
+        try {
+            return MethodHandles.publicLookup().findStatic(type("CommandStats"), "record",
+                    MethodType.methodType(void.class, String.class, long.class, type("Pipeline"), long.class));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Pipeline.of(commands, new BuiltinRegistry(), new CommandHash())。
+     */
+    static Object pipeline(List<?> commands) {
+        try {
+            Object builtins = type("BuiltinRegistry").getConstructor().newInstance();
+            Object commandHash = type("CommandHash").getConstructor().newInstance();
+            return type("Pipeline").getMethod("of", List.class, type("BuiltinRegistry"), type("CommandHash"))
+                                   .invoke(null, commands, builtins, commandHash);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static void setOption(String name, boolean on) {
+        try {
+            type("ShellOptions").getMethod("set", String.class, boolean.class).invoke(null, name, on);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static History newHistory() {
+        try {
+            return (History) type("CustomHistory").getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * CustomHistory.flush()：等待后台写入完成。
+     */
+    static void flushHistory(History history) {
+        try {
+            type("CustomHistory").getMethod("flush").invoke(history);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * CustomHistory.trimHistory(path, max)，该方法为 protected。
+     */
+    static void trimHistory(History history, Path path, int max) {
+        try {
+            Method trim = type("CustomHistory").getDeclaredMethod("trimHistory", Path.class, int.class);
+            trim.setAccessible(true);
+            trim.invoke(history, path, max);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static Widget newDoubleTabWidget(LineReader reader, Supplier<NavigableSet<String>> commands) {
+        try {
+            return (Widget) type("DoubleTabWidget").getConstructor(LineReader.class, Supplier.class).newInstance(reader, commands);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 外部命令的启动延迟：ProcessBuilder.startPipeline 对比 ProcessLauncher 的 posix_spawn，
+ * 每次调用启动 stages 个以管道相连的 /bin/true 并等待全部结束。
+ * heapMb 在 JVM 中常驻一块已触碰过的堆，观察启动耗时是否随进程内存增长。
+ *
+ * <pre>
+ * cd benchmarks &amp;&amp; mvn -q package &amp;&amp; java -jar target/benchmarks.jar SpawnBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class SpawnBenchmark {
+
+    private static final String TRUE = "/bin/true";
+
+    @Param({"processBuilder", "posixSpawn"})
+    String launcher;
+
+    @Param({"1", "3"})
+    int stages;
+
+    @Param({"0", "2048"})
+    int heapMb;
+
+    private final MethodHandle posixSpawn = Shell.posixSpawn();
+
+    private List<long[]> ballast;
+
+    private List<String> paths;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        ballast = new ArrayList<>();
+        for (int i = 0; i < heapMb; i++) {
+            long[] chunk = new long[128 * 1024];
+            for (int j = 0; j < chunk.length; j += 512) {
+                chunk[j] = j;
+            }
+            ballast.add(chunk);
+        }
+        paths = Collections.nCopies(stages, TRUE);
+        if ("posixSpawn".equals(launcher) && invoke(builders()) == null) {
+            throw new IllegalStateException("posix_spawn is not available on this platform");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ballast = null;
+    }
+
+    private List<ProcessBuilder> builders() {
+        List<ProcessBuilder> builders = new ArrayList<>();
+        for (int i = 0; i < stages; i++) {
+            ProcessBuilder builder = new ProcessBuilder("true");
+            if (i == 0) {
+                builder.redirectInput(ProcessBuilder.Redirect.INHERIT);
+            }
+            if (i == stages - 1) {
+                builder.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+            }
+            builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+            builders.add(builder);
+        }
+        return builders;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Process> invoke(List<ProcessBuilder> builders) throws Throwable {
+        return (List<Process>) posixSpawn.invoke(builders, paths);
+    }
+
+    @Benchmark
+    public int spawn() throws Throwable {
+        List<ProcessBuilder> builders = builders();
+        if ("processBuilder".equals(launcher)) {
+            // ProcessBuilder 按 PATH 查找，与 shell 一样给出绝对路径，两边都不含查找开销
+            for (ProcessBuilder builder : builders) {
+                builder.command().set(0, TRUE);
+            }
+        }
+        List<Process> processes = "processBuilder".equals(launcher) ? ProcessBuilder.startPipeline(builders) : invoke(builders);
+        int status = 0;
+        for (Process process : processes) {
+            status |= process.waitFor();
+        }
+        return status;
+    }
+}
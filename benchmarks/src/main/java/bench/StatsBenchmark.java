@@ -0,0 +1,57 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.invoke.MethodHandle;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 开启 set -o stats 后每条命令多出的开销：CommandStats.record 记录五个阶段的直方图。
+ * commands 个不同的命令名轮流记录，覆盖命中同一组直方图与在较大的表中查找两种情况。
+ *
+ * <pre>
+ * cd benchmarks &amp;&amp; mvn -q package &amp;&amp; java -jar target/benchmarks.jar StatsBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatsBenchmark {
+
+    @Param({"1", "200"})
+    int commands;
+
+    private final MethodHandle record = Shell.recordStats();
+
+    private Object pipeline;
+
+    private String[] names;
+
+    private int next;
+
+    private long sample;
+
+    @Setup
+    public void setUp() {
+        Shell.setOption("stats", true);
+        // 空管道：各阶段耗时都是 0，只测记录本身
+        pipeline = Shell.pipeline(Collections.emptyList());
+        names = new String[commands];
+        for (int i = 0; i < commands; i++) {
+            names[i] = "command-" + i;
+        }
+    }
+
+    @Benchmark
+    public void record() throws Throwable {
+        String name = names[next];
+        next = next + 1 == names.length ? 0 : next + 1;
+        // 样本值在各个桶之间变化
+        sample = sample * 6364136223846793005L + 1442695040888963407L;
+        record.invoke(name, sample >>> 40, pipeline, sample >>> 30);
+    }
+}
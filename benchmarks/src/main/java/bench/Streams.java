@@ -0,0 +1,56 @@
+package bench;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 基准共用的输入输出：不落盘的合成子进程输出，以及只计数不保存的输出端。
+ */
+final class Streams {
+
+    private Streams() {}
+
+    /**
+     * 生成 total 字节的文本，每 lineLength 字节一个换行，模拟子进程 stdout。
+     */
+    static InputStream synthetic(long total, int lineLength) {
+        int patternSize = Math.max(lineLength, 64 * 1024);
+        patternSize -= patternSize % lineLength;
+        byte[] pattern = new byte[patternSize];
+        for (int i = 0; i < pattern.length; i++) {
+            pattern[i] = (byte) ((i + 1) % lineLength == 0 ? '\n' : 'a' + i % 26);
+        }
+        return new InputStream() {
+            private long remaining = total;
+            private int pos = 0;
+
+            @Override
+            public int read() {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (remaining <= 0) {
+                    return -1;
+                }
+                int n = (int) Math.min(Math.min(len, remaining), pattern.length - pos);
+                System.arraycopy(pattern, pos, b, off, n);
+                pos = (pos + n) % pattern.length;
+                remaining -= n;
+                return n;
+            }
+        };
+    }
+
+    static OutputStream discard() {
+        return new OutputStream() {
+            @Override
+            public void write(int b) {}
+
+            @Override
+            public void write(byte[] b, int off, int len) {}
+        };
+    }
+}
@@ -0,0 +1,80 @@
+package bench;
+
+import org.jline.reader.History;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 历史文件超过 HISTORY_FILE_SIZE 的 1.25 倍时的 trimHistory：截断到默认的 10000 条并去重，文件为 lines 行。
+ * distinct 为文件中不同的行数：较多时凑够 10000 条即可停止，较少（1000）时必须读完整个文件。
+ * 每次调用前重写文件，使用单次计时。
+ *
+ * <pre>
+ * cd benchmarks &amp;&amp; ./run.sh TrimBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TrimBenchmark {
+
+    private static final int MAX = 10000;
+
+    @Param({"10000", "100000", "1000000"})
+    int lines;
+
+    @Param({"many", "1000"})
+    String distinct;
+
+    private Path dir;
+
+    private Path historyFile;
+
+    private byte[] content;
+
+    private History history;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("trim-bench");
+        historyFile = dir.resolve("history");
+        String[] text = Readers.commandLines(lines);
+        if (!"many".equals(distinct)) {
+            String[] pool = Readers.commandLines(Integer.parseInt(distinct) * 4);
+            for (int i = 0; i < text.length; i++) {
+                text[i] = pool[i % pool.length];
+            }
+        }
+        content = (String.join("\n", Arrays.asList(text)) + "\n").getBytes();
+        history = Shell.newHistory();
+        Readers.withHistory(history, historyFile, 500);
+    }
+
+    @Setup(Level.Invocation)
+    public void write() throws IOException {
+        Files.write(historyFile, content);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(historyFile);
+        Files.deleteIfExists(dir);
+    }
+
+    /**
+     * 截断的是 HISTORY_FILE 本身，与提示符下追加时触发的情况相同，内存中的历史也随之重建。
+     */
+    @Benchmark
+    public long trimHistory() throws IOException {
+        Shell.trimHistory(history, historyFile, MAX);
+        return Files.size(historyFile);
+    }
+}
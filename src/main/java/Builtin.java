@@ -0,0 +1,19 @@
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+// 内建命令：在 shell 进程内执行。输入输出由调用方传入，因此可以统一地接到终端、重定向文件或管道的任意一端
+@FunctionalInterface
+public interface Builtin {
+
+    /**
+     * 执行内建命令。
+     *
+     * @param args 参数，不含命令名，引号与转义已处理
+     * @param in   标准输入
+     * @param out  标准输出
+     * @param err  标准错误
+     * @return 退出码
+     */
+    int execute(List<String> args, InputStream in, PrintStream out, PrintStream err) throws Exception;
+}
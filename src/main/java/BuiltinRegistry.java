@@ -0,0 +1,63 @@
+import java.util.*;
+import java.util.function.Predicate;
+
+// 内建命令注册表：按名字 O(1) 查找，type 和补全也都从这里读取
+public class BuiltinRegistry {
+
+    // 进程内代替外部程序执行的实现，只在参数受支持时生效
+    private static class Replacement {
+        private final Builtin                 builtin;
+        private final Predicate<List<String>> supports;
+
+        Replacement(Builtin builtin, Predicate<List<String>> supports) {
+            this.builtin = builtin;
+            this.supports = supports;
+        }
+    }
+
+    private final Map<String, Builtin> builtins = new HashMap<>();
+
+    private final Map<String, Replacement> replacements = new HashMap<>();
+
+    private SortedSet<String> names = Collections.emptySortedSet();
+
+    public void register(String name, Builtin builtin) {
+        builtins.put(name, builtin);
+        names = Collections.unmodifiableSortedSet(new TreeSet<>(builtins.keySet()));
+    }
+
+    /**
+     * 注册一个外部程序的进程内实现。它对用户不可见：type 仍报告 PATH 中的程序，补全也不重复列出；
+     * 参数不受支持时照常启动外部程序。
+     *
+     * @param supports 判断参数是否可以在进程内处理
+     */
+    public void replace(String name, Builtin builtin, Predicate<List<String>> supports) {
+        replacements.put(name, new Replacement(builtin, supports));
+    }
+
+    /**
+     * @param args 参数，不含命令名
+     * @return 对应的内建命令或进程内实现，都没有时返回 null
+     */
+    public Builtin get(String name, List<String> args) {
+        Builtin builtin = builtins.get(name);
+        if (builtin != null) {
+            return builtin;
+        }
+        Replacement replacement = replacements.get(name);
+        if (replacement != null && replacement.supports.test(args)) {
+            return replacement.builtin;
+        }
+        return null;
+    }
+
+    public boolean isBuiltin(String name) {
+        return builtins.containsKey(name);
+    }
+
+    // 全部内建命令名，有序、只读
+    public SortedSet<String> names() {
+        return names;
+    }
+}
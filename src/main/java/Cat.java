@@ -0,0 +1,145 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.*;
+import java.util.Collections;
+import java.util.List;
+
+// 进程内的 cat：文件内容用 FileChannel.transferTo 直接送到标准输出的通道，
+// 不启动子进程，也不经过 JVM 的字符集解码；目标是文件、终端或管道时由内核拷贝（sendfile）。
+// 只处理不带选项的用法，带选项时仍交给 PATH 中的 cat
+public class Cat implements Builtin {
+
+    private static final int BUFFER_SIZE = DealProcessStream.BUFFER_SIZE;
+
+    // 写往标准输出一侧失败：下游已经退出或输出已经出错。不看异常消息（随语言环境和流的实现而不同），
+    // 凡是写出时的失败都按 EPIPE 处理
+    private static final class SinkClosedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        SinkClosedException(IOException cause) {
+            super(cause);
+        }
+    }
+
+    /**
+     * 参数中没有选项（单独的 "-" 表示标准输入，不算选项）时才由这里处理。
+     */
+    public static boolean supports(List<String> words) {
+        for (String word : words) {
+            if (word.length() > 1 && word.startsWith("-")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int execute(List<String> args, InputStream in, PrintStream out, PrintStream err) throws IOException {
+        List<String> files = args;
+        if (files.isEmpty()) {
+            files = Collections.singletonList("-");
+        }
+        WritableByteChannel target;
+        try {
+            target = out instanceof ShellOutput ? ((ShellOutput) out).channel() : Channels.newChannel(out);
+        } catch (IOException e) {
+            // 之前写入标准输出时已经出错
+            return 141;
+        }
+        int status = 0;
+        for (String file : files) {
+            try {
+                if ("-".equals(file)) {
+                    copy(in, target);
+                } else {
+                    Path path = Paths.get(System.getProperty("user.dir")).resolve(file);
+                    if (Files.isDirectory(path)) {
+                        err.println("cat: " + file + ": Is a directory");
+                        status = 1;
+                        continue;
+                    }
+                    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                        transfer(channel, target);
+                    }
+                }
+                // 普通 PrintStream 吞掉写出时的异常，只留下错误标志
+                if (!(out instanceof ShellOutput) && out.checkError()) {
+                    return 141;
+                }
+            } catch (NoSuchFileException e) {
+                err.println("cat: " + file + ": No such file or directory");
+                status = 1;
+            } catch (AccessDeniedException e) {
+                err.println("cat: " + file + ": Permission denied");
+                status = 1;
+            } catch (SinkClosedException e) {
+                // 下游已经退出（如 cat big | head），与外部 cat 收到 SIGPIPE 一样安静地结束
+                return 141;
+            } catch (IOException e) {
+                err.println("cat: " + file + ": " + e.getMessage());
+                status = 1;
+            }
+        }
+        return status;
+    }
+
+    private static void transfer(FileChannel channel, WritableByteChannel target) throws IOException {
+        long position = 0;
+        long size = channel.size();
+        while (position < size) {
+            long n;
+            try {
+                n = channel.transferTo(position, size - position, target);
+            } catch (IOException e) {
+                throw sourceOrSink(channel, position, e);
+            }
+            if (n <= 0) {
+                break;
+            }
+            position += n;
+        }
+        // /proc 之类报告大小为 0 的文件，以及读取期间仍在增长的文件，剩余部分按块读出
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        channel.position(position);
+        while (channel.read(buffer) != -1) {
+            buffer.flip();
+            write(target, buffer);
+            buffer.clear();
+        }
+    }
+
+    // 标准输入可能是终端，每读到一块就立即写出
+    private static void copy(InputStream in, WritableByteChannel target) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            write(target, ByteBuffer.wrap(buffer, 0, n));
+        }
+    }
+
+    private static void write(WritableByteChannel target, ByteBuffer buffer) throws SinkClosedException {
+        try {
+            while (buffer.hasRemaining()) {
+                target.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new SinkClosedException(e);
+        }
+    }
+
+    // transferTo 同时读文件、写目标，失败时无法从异常区分是哪一侧：在同一位置再读一个字节，
+    // 读得出来说明文件没有问题，失败的是写出一侧
+    private static IOException sourceOrSink(FileChannel channel, long position, IOException e) {
+        try {
+            channel.read(ByteBuffer.allocate(1), position);
+        } catch (IOException readFailure) {
+            return e;
+        }
+        return new SinkClosedException(e);
+    }
+}
@@ -0,0 +1,151 @@
+import jnr.constants.platform.Errno;
+import jnr.ffi.LibraryLoader;
+import jnr.ffi.Platform;
+import jnr.ffi.annotations.Out;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+// posix_spawn 启动的子进程的统一回收：不论有多少个（后台作业也一样），只占一个守护线程。
+// 该线程用 waitid(P_ALL, WEXITED | WNOWAIT) 阻塞到任意一个子进程结束——只观察、不回收，醒来后对登记过的 pid 逐个 wait4(WNOHANG)，
+// 结束了的才回收（顺带取得资源用量）。不能用 waitpid(-1)：它会把 ProcessBuilder 启动的子进程也收走，
+// JDK 为那个进程保留的回收线程随后只得到 ECHILD，把退出码当成 0。醒来时结束的若不是这里登记的进程，它留给 JDK 回收，
+// 这里稍等片刻再继续，避免 waitid 对同一个尚未回收的僵尸进程反复立即返回。
+// jnr-posix 没有封装 waitid/wait4，用 jnr-ffi 直接绑定 libc；只支持 64 位 Linux（常量取值与 struct rusage 的布局），
+// 其它平台上 SpawnedProcess 仍为每个子进程占一个阻塞在 waitpid 上的线程
+final class ChildReaper {
+
+    public interface LibC {
+        int waitid(int idtype, int id, @Out int[] info, int options);
+
+        int wait4(int pid, @Out int[] status, int options, @Out long[] usage);
+    }
+
+    /**
+     * 子进程结束时在回收线程中调用。
+     */
+    interface Listener {
+        /**
+         * @param status waitpid 格式的退出状态；已被别处回收、无从得知时为 -1
+         * @param usage  该子进程自己的资源用量，无从得知时为 null
+         */
+        void exited(int status, ResourceUsage usage);
+    }
+
+    private static final int P_ALL   = 0;
+    private static final int WNOHANG = 1;
+    private static final int WEXITED = 4;
+    private static final int WNOWAIT = 0x01000000;
+
+    // siginfo_t 固定为 128 字节；这里不读取其中的内容，结束的是哪个进程由逐个 wait4 判断
+    private static final int SIGINFO_INTS = 32;
+
+    // struct rusage 共 18 个 long
+    private static final int RUSAGE_LONGS = 18;
+
+    // 结束的是 ProcessBuilder 的子进程时，等 JDK 回收它的间隔
+    private static final long FOREIGN_CHILD_BACKOFF_MILLIS = 2;
+
+    private static final class Holder {
+        private static final LibC LIBC = load();
+
+        private static LibC load() {
+            Platform platform = Platform.getNativePlatform();
+            if (platform.getOS() != Platform.OS.LINUX || !platform.is64Bit()) {
+                return null;
+            }
+            try {
+                return LibraryLoader.create(LibC.class).load(platform.getStandardCLibraryName());
+            } catch (LinkageError | RuntimeException e) {
+                return null;
+            }
+        }
+    }
+
+    // 登记了、尚未回收的子进程；只在持有 ChildReaper.class 的锁时访问
+    private static final Map<Long, Listener> children = new HashMap<>();
+
+    private static Thread thread;
+
+    private ChildReaper() {}
+
+    static boolean isAvailable() {
+        return Holder.LIBC != null;
+    }
+
+    /**
+     * 登记一个刚由 posix_spawn 启动的子进程，它结束时回收并通知 listener。第一次调用时启动回收线程。
+     */
+    static synchronized void watch(long pid, Listener listener) {
+        children.put(pid, listener);
+        if (thread == null) {
+            thread = new Thread(ChildReaper::run, "spawn-reaper");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        ChildReaper.class.notifyAll();
+    }
+
+    private static void run() {
+        LibC libc = Holder.LIBC;
+        int[] info = new int[SIGINFO_INTS];
+        while (true) {
+            synchronized (ChildReaper.class) {
+                // 没有登记的子进程时 waitid 要么立即返回 ECHILD，要么被 ProcessBuilder 的子进程反复唤醒，先在这里等
+                while (children.isEmpty()) {
+                    try {
+                        ChildReaper.class.wait();
+                    } catch (InterruptedException e) {
+                        // 守护线程，不响应中断
+                    }
+                }
+            }
+            if (libc.waitid(P_ALL, 0, info, WEXITED | WNOWAIT) != 0
+                    && jnr.ffi.Runtime.getRuntime(libc).getLastError() == Errno.EINTR.intValue()) {
+                continue;
+            }
+            // 出错（ECHILD）时登记的进程都已不是子进程，下面的 wait4 会逐个报告
+            if (!reapExited(libc)) {
+                try {
+                    Thread.sleep(FOREIGN_CHILD_BACKOFF_MILLIS);
+                } catch (InterruptedException e) {
+                    // 同上
+                }
+            }
+        }
+    }
+
+    // 回收登记过的、已经结束的子进程，在锁外通知（通知会触发 Pipeline.onExit 等后续动作）；返回是否回收了至少一个
+    private static boolean reapExited(LibC libc) {
+        List<Runnable> notifications = new ArrayList<>();
+        synchronized (ChildReaper.class) {
+            Iterator<Map.Entry<Long, Listener>> it = children.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Long, Listener> entry = it.next();
+                int pid = entry.getKey().intValue();
+                int[] status = new int[1];
+                long[] usage = new long[RUSAGE_LONGS];
+                int result = libc.wait4(pid, status, WNOHANG, usage);
+                if (result == 0) {
+                    continue;
+                }
+                if (result < 0 && jnr.ffi.Runtime.getRuntime(libc).getLastError() == Errno.EINTR.intValue()) {
+                    // 下一次唤醒时再试
+                    continue;
+                }
+                it.remove();
+                Listener listener = entry.getValue();
+                notifications.add(result == pid
+                        ? () -> listener.exited(status[0], ResourceUsage.of(usage))
+                        : () -> listener.exited(-1, null));
+            }
+        }
+        for (Runnable notification : notifications) {
+            notification.run();
+        }
+        return !notifications.isEmpty();
+    }
+}
@@ -0,0 +1,158 @@
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.*;
+
+// 类似 bash 的命令哈希表：命令在第一次使用时才去 PATH 中查找，找到后记住结果；
+// 之后只要所在目录的 mtime 没变就直接命中（一次 stat），目录有增删文件时才重新查找
+public class CommandHash {
+
+    private static final boolean WINDOWS = System.getProperty("os.name").toLowerCase().contains("win");
+
+    private static class Entry {
+        private final String path;
+        private final File   dir;
+        private final long   dirModified;
+        private int hits;
+
+        Entry(String path, File dir, long dirModified) {
+            this.path = path;
+            this.dir = dir;
+            this.dirModified = dirModified;
+        }
+    }
+
+    private final List<File> dirs = new ArrayList<>();
+
+    // 保持插入顺序，hash 列表与 bash 一样按记住的先后输出
+    private final Map<String, Entry> table = new LinkedHashMap<>();
+
+    public CommandHash() {
+        this(System.getenv("PATH"));
+    }
+
+    public CommandHash(String path) {
+        if (path != null) {
+            for (String dir : path.split(File.pathSeparator)) {
+                if (!dir.isEmpty()) {
+                    dirs.add(new File(dir));
+                }
+            }
+        }
+    }
+
+    /**
+     * 查找命令对应的可执行文件。
+     *
+     * @param name 命令名；包含路径分隔符时直接检查该文件，不进入哈希表
+     * @return 可执行文件的绝对路径，找不到返回 null
+     */
+    public synchronized String lookup(String name) {
+        if (name.isEmpty()) {
+            return null;
+        }
+        if (name.indexOf('/') >= 0 || name.indexOf(File.separatorChar) >= 0) {
+            File file = absolute(new File(name));
+            return isExecutable(file) ? file.getPath() : null;
+        }
+        Entry entry = table.get(name);
+        if (entry != null) {
+            if (entry.dir.lastModified() == entry.dirModified) {
+                entry.hits++;
+                return entry.path;
+            }
+            // 目录内容有变化（安装或删除了程序），丢弃旧结果重新查找
+            table.remove(name);
+        }
+        entry = resolve(name);
+        if (entry == null) {
+            return null;
+        }
+        entry.hits = 1;
+        table.put(name, entry);
+        return entry.path;
+    }
+
+    /**
+     * hash name：重新查找并记住，命中次数清零。
+     *
+     * @return 是否找到
+     */
+    public synchronized boolean add(String name) {
+        table.remove(name);
+        Entry entry = resolve(name);
+        if (entry == null) {
+            return false;
+        }
+        table.put(name, entry);
+        return true;
+    }
+
+    /**
+     * hash -d name
+     */
+    public synchronized boolean remove(String name) {
+        return table.remove(name) != null;
+    }
+
+    /**
+     * hash -r
+     */
+    public synchronized void reset() {
+        table.clear();
+    }
+
+    /**
+     * hash -t name：已记住时返回其路径，否则返回 null。
+     */
+    public synchronized String remembered(String name) {
+        Entry entry = table.get(name);
+        return entry != null ? entry.path : null;
+    }
+
+    /**
+     * 按 bash 的格式输出哈希表。
+     */
+    public synchronized List<String> describe() {
+        List<String> lines = new ArrayList<>();
+        if (table.isEmpty()) {
+            return lines;
+        }
+        lines.add("hits\tcommand");
+        for (Entry entry : table.values()) {
+            lines.add(String.format("%4d\t%s", entry.hits, entry.path));
+        }
+        return lines;
+    }
+
+    private Entry resolve(String name) {
+        for (File dir : dirs) {
+            File file = absolute(new File(dir, name));
+            if (isExecutable(file)) {
+                return new Entry(file.getPath(), dir, dir.lastModified());
+            }
+            if (WINDOWS) {
+                for (String ext : windowsExtensions()) {
+                    file = absolute(new File(dir, name + ext));
+                    if (isExecutable(file)) {
+                        return new Entry(file.getPath(), dir, dir.lastModified());
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private static List<String> windowsExtensions() {
+        String pathExt = System.getenv("PATHEXT");
+        return Arrays.asList((pathExt != null ? pathExt : ".COM;.EXE;.BAT;.CMD").toLowerCase().split(";"));
+    }
+
+    // 相对路径按 shell 的当前目录（cd 更新 user.dir）解析并规范化；File.getAbsolutePath 用的是 JVM 启动时的目录
+    private static File absolute(File file) {
+        return Paths.get(System.getProperty("user.dir")).resolve(file.toPath()).normalize().toFile();
+    }
+
+    private static boolean isExecutable(File file) {
+        return file.isFile() && file.canExecute();
+    }
+}
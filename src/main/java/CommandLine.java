@@ -0,0 +1,53 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// 一行输入的语法树：由 ; 或 & 分隔的若干管道，每个管道由 | 连接的若干简单命令组成
+public class CommandLine {
+
+    public static class Entry {
+        private final List<Command> commands;
+        // 以 & 结尾
+        private final boolean       background;
+        // 以保留字 time 开头，commands 中已去掉 time；单独的 time 时 commands 为空
+        private final boolean       timed;
+        // 在输入行中的原文（不含分隔符），用于 jobs 等显示
+        private final String        text;
+
+        Entry(List<Command> commands, boolean background, boolean timed, String text) {
+            this.commands = commands;
+            this.background = background;
+            this.timed = timed;
+            this.text = text;
+        }
+
+        public List<Command> commands() {
+            return commands;
+        }
+
+        public boolean isBackground() {
+            return background;
+        }
+
+        public boolean isTimed() {
+            return timed;
+        }
+
+        public String text() {
+            return text;
+        }
+    }
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    void add(List<Command> commands, boolean background, boolean timed, String text) {
+        entries.add(new Entry(commands, background, timed, text));
+    }
+
+    public List<Entry> entries() {
+        return entries;
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+}
@@ -0,0 +1,302 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// 按命令名汇总的各阶段耗时直方图：解析、查找命令、启动进程、整体运行、转发输出。
+// 桶按 2 的幂划分（第 i 个桶收 [2^(i-1), 2^i) 纳秒），记录一个样本只是几次原子加，不分配对象；
+// set -o stats 或 -Dshell.stats=true 开启，stats 内建命令打印；-Dshell.stats.file 指定文件时
+// 每隔 shell.stats.interval 秒（默认 15）以 Prometheus 文本格式写出一次，退出时再写一次
+public final class CommandStats {
+
+    public enum Phase {
+        PARSE, RESOLVE, SPAWN, RUN, DRAIN;
+
+        private final String label = name().toLowerCase();
+    }
+
+    // 2^40 ns 约 18 分钟，更长的都落在最后一个桶
+    private static final int BUCKETS = 41;
+
+    // 命令名过多（如每次都是不同的路径）时，其余的归到 OTHER，避免无限增长
+    private static final int MAX_COMMANDS = Integer.getInteger("shell.stats.commands", 256);
+
+    private static final String OTHER = "(other)";
+
+    private static final File EXPORT_FILE = exportFile();
+
+    private static final long EXPORT_INTERVAL = Long.getLong("shell.stats.interval", 15);
+
+    // 单个阶段的直方图
+    static final class Histogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong      count   = new AtomicLong();
+        private final AtomicLong      sum     = new AtomicLong();
+
+        void record(long nanos) {
+            long value = Math.max(nanos, 0);
+            buckets.incrementAndGet(Math.min(64 - Long.numberOfLeadingZeros(value), BUCKETS - 1));
+            count.incrementAndGet();
+            sum.addAndGet(value);
+        }
+
+        long count() {
+            return count.get();
+        }
+
+        long sum() {
+            return sum.get();
+        }
+
+        // 第 q 分位所在桶的上界（纳秒），没有样本时为 0
+        long quantile(double q) {
+            long total = count.get();
+            long rank = (long) Math.ceil(total * q);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank && seen > 0) {
+                    return upperBound(i);
+                }
+            }
+            return 0;
+        }
+    }
+
+    private static final class CommandHistograms {
+        private final Histogram[] phases = new Histogram[Phase.values().length];
+
+        CommandHistograms() {
+            for (int i = 0; i < phases.length; i++) {
+                phases[i] = new Histogram();
+            }
+        }
+    }
+
+    private static final Map<String, CommandHistograms> commands = new ConcurrentHashMap<>();
+
+    private static volatile ScheduledExecutorService exporter;
+
+    // 交互模式下补全用的命令索引，批处理模式没有
+    private static volatile PathIndex pathIndex;
+
+    private CommandStats() {}
+
+    private static File exportFile() {
+        String configured = System.getProperty("shell.stats.file");
+        return configured == null || configured.isEmpty() ? null : new File(configured);
+    }
+
+    /**
+     * 交互模式启动时登记补全用的命令索引，stats 与导出中随之报告其扫描进度。
+     */
+    public static void watch(PathIndex index) {
+        pathIndex = index;
+    }
+
+    public static boolean isEnabled() {
+        return ShellOptions.isSet("stats");
+    }
+
+    // 第 i 个桶的上界：2^i 纳秒；第 0 个桶只收 0
+    static long upperBound(int bucket) {
+        return bucket == 0 ? 0 : 1L << bucket;
+    }
+
+    /**
+     * 记录一条管道的各阶段耗时，未开启时什么也不做。
+     *
+     * @param command    管道第一个命令的名字
+     * @param parseNanos 解析所在行的耗时
+     * @param runNanos   从构造管道到全部阶段结束的耗时
+     */
+    public static void record(String command, long parseNanos, Pipeline pipeline, long runNanos) {
+        if (command == null || !isEnabled()) {
+            return;
+        }
+        if (EXPORT_FILE != null && exporter == null) {
+            startExporter();
+        }
+        Histogram[] phases = histograms(command).phases;
+        phases[Phase.PARSE.ordinal()].record(parseNanos);
+        phases[Phase.RESOLVE.ordinal()].record(pipeline.resolveNanos());
+        phases[Phase.SPAWN.ordinal()].record(pipeline.spawnNanos());
+        phases[Phase.RUN.ordinal()].record(runNanos);
+        phases[Phase.DRAIN.ordinal()].record(pipeline.drainNanos());
+    }
+
+    private static CommandHistograms histograms(String command) {
+        CommandHistograms histograms = commands.get(command);
+        if (histograms != null) {
+            return histograms;
+        }
+        if (commands.size() >= MAX_COMMANDS) {
+            command = OTHER;
+        }
+        return commands.computeIfAbsent(command, name -> new CommandHistograms());
+    }
+
+    // 第一次记录时启动定时导出，并在 JVM 退出时最后写一次
+    private static synchronized void startExporter() {
+        if (EXPORT_FILE == null || exporter != null) {
+            return;
+        }
+        exporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stats-export");
+            thread.setDaemon(true);
+            return thread;
+        });
+        exporter.scheduleWithFixedDelay(CommandStats::export, EXPORT_INTERVAL, EXPORT_INTERVAL, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(CommandStats::export, "stats-export-final"));
+    }
+
+    /**
+     * stats [-r]：打印各命令各阶段的样本数、平均值与 p50/p99（所在桶的上界），以及转发线程池的状态；
+     * 交互模式下还有到第一个提示符的耗时与 PATH 索引的扫描进度。-r 清空。
+     */
+    public static int stats(List<String> args, PrintStream out, PrintStream err) {
+        if (!args.isEmpty()) {
+            if (args.size() == 1 && "-r".equals(args.get(0))) {
+                commands.clear();
+                return 0;
+            }
+            err.println("stats: usage: stats [-r]");
+            return 2;
+        }
+        if (!isEnabled()) {
+            out.println("stats: recording is off (set -o stats)");
+        }
+        List<String> names = new ArrayList<>(commands.keySet());
+        Collections.sort(names);
+        if (!names.isEmpty()) {
+            out.printf("%-16s %-8s %8s %10s %10s %10s%n", "command", "phase", "count", "mean", "p50<=", "p99<=");
+        }
+        for (String name : names) {
+            CommandHistograms histograms = commands.get(name);
+            for (Phase phase : Phase.values()) {
+                Histogram histogram = histograms.phases[phase.ordinal()];
+                long count = histogram.count();
+                if (count == 0) {
+                    continue;
+                }
+                out.printf("%-16s %-8s %8d %10s %10s %10s%n", name, phase.label, count,
+                        duration(histogram.sum() / count), duration(histogram.quantile(0.5)), duration(histogram.quantile(0.99)));
+            }
+        }
+        out.println(DrainExecutor.describe());
+        if (StartupProfile.timeToFirstPromptMillis() >= 0) {
+            out.println("startup: first-prompt-ms=" + StartupProfile.timeToFirstPromptMillis());
+        }
+        PathIndex index = pathIndex;
+        if (index != null) {
+            out.println(index.describe());
+        }
+        if (EXPORT_FILE != null) {
+            out.println("export: " + EXPORT_FILE + " every " + EXPORT_INTERVAL + "s");
+        }
+        return 0;
+    }
+
+    private static String duration(long nanos) {
+        if (nanos < 1_000) {
+            return nanos + "ns";
+        }
+        if (nanos < 1_000_000) {
+            return String.format("%.1fus", nanos / 1e3);
+        }
+        if (nanos < 1_000_000_000) {
+            return String.format("%.1fms", nanos / 1e6);
+        }
+        return String.format("%.2fs", nanos / 1e9);
+    }
+
+    // Prometheus 文本格式（0.0.4）：每个命令、阶段一组累积桶，单位秒
+    static String prometheus() {
+        StringBuilder text = new StringBuilder();
+        text.append("# HELP shell_command_phase_seconds Time spent per command name and execution phase.\n");
+        text.append("# TYPE shell_command_phase_seconds histogram\n");
+        List<String> names = new ArrayList<>(commands.keySet());
+        Collections.sort(names);
+        for (String name : names) {
+            CommandHistograms histograms = commands.get(name);
+            for (Phase phase : Phase.values()) {
+                Histogram histogram = histograms.phases[phase.ordinal()];
+                String labels = "command=\"" + escape(name) + "\",phase=\"" + phase.label + "\"";
+                long cumulative = 0;
+                for (int i = 0; i < BUCKETS - 1; i++) {
+                    cumulative += histogram.buckets.get(i);
+                    text.append("shell_command_phase_seconds_bucket{").append(labels)
+                        .append(",le=\"").append(upperBound(i) / 1e9).append("\"} ").append(cumulative).append('\n');
+                }
+                cumulative += histogram.buckets.get(BUCKETS - 1);
+                text.append("shell_command_phase_seconds_bucket{").append(labels).append(",le=\"+Inf\"} ").append(cumulative).append('\n');
+                text.append("shell_command_phase_seconds_sum{").append(labels).append("} ").append(histogram.sum() / 1e9).append('\n');
+                text.append("shell_command_phase_seconds_count{").append(labels).append("} ").append(cumulative).append('\n');
+            }
+        }
+        gauge(text, "shell_drain_queued", "gauge", "Output drains submitted but not started.", DrainExecutor.queued());
+        gauge(text, "shell_drain_active", "gauge", "Output drains currently running.", DrainExecutor.active());
+        gauge(text, "shell_drain_completed_total", "counter", "Output drains finished.", DrainExecutor.completed());
+        gauge(text, "shell_drain_overflow_total", "counter", "Drains run on a temporary thread because the pool was full.", DrainExecutor.overflow());
+        // 启动与补全索引：只在交互模式下、对应的值已经确定时写出
+        long firstPrompt = StartupProfile.timeToFirstPromptMillis();
+        if (firstPrompt >= 0) {
+            gauge(text, "shell_startup_first_prompt_seconds", "gauge", "Time from main entry to the first prompt.", firstPrompt / 1e3);
+        }
+        PathIndex index = pathIndex;
+        if (index != null) {
+            gauge(text, "shell_path_index_complete", "gauge", "1 once the first PATH scan has finished.", index.isComplete() ? 1 : 0);
+            if (index.scanMillis() >= 0) {
+                gauge(text, "shell_path_index_scan_seconds", "gauge", "Duration of the first full PATH scan.", index.scanMillis() / 1e3);
+            }
+            gauge(text, "shell_path_index_cached_dirs", "gauge", "PATH directories taken from the index cache.", index.cachedDirs());
+            gauge(text, "shell_path_index_scanned_dirs", "gauge", "PATH directories listed by the scanner.", index.scannedDirs());
+        }
+        return text.toString();
+    }
+
+    private static void gauge(StringBuilder text, String name, String type, String help, long value) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        text.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void gauge(StringBuilder text, String name, String type, String help, double value) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        text.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    // 先写临时文件再原子替换，node_exporter 之类的读取方不会读到写了一半的文件
+    private static void export() {
+        try {
+            File parent = EXPORT_FILE.getAbsoluteFile().getParentFile();
+            Path temp = Files.createTempFile(parent.toPath(), EXPORT_FILE.getName(), ".tmp");
+            try {
+                Files.write(temp, prometheus().getBytes(StandardCharsets.UTF_8));
+                Files.move(temp, EXPORT_FILE.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException | RuntimeException e) {
+            // 导出失败不影响 shell 本身，下一个周期再试
+        }
+    }
+}
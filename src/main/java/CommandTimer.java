@@ -0,0 +1,81 @@
+import java.io.PrintStream;
+
+// 保留字 time 的计时：墙钟时间、子进程的用户态/内核态 CPU 与最大常驻内存，
+// 以及 shell 自己的开销（解析、查找命令、启动进程、转发输出与 JVM 的 CPU），用来区分慢在程序本身还是慢在 shell
+public final class CommandTimer {
+
+    private final long parseNanos;
+    private final long startNanos;
+    // 开始时的累计用量，平台不支持 getrusage 时为 null
+    private final ResourceUsage childrenBefore;
+    private final ResourceUsage selfBefore;
+
+    private CommandTimer(long parseNanos) {
+        this.parseNanos = parseNanos;
+        this.childrenBefore = ResourceUsage.children();
+        this.selfBefore = ResourceUsage.self();
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * 在构造管道之前调用。
+     *
+     * @param parseNanos 解析这一行花的时间
+     */
+    public static CommandTimer start(long parseNanos) {
+        return new CommandTimer(parseNanos);
+    }
+
+    /**
+     * 管道结束后把结果写到 out，格式前三行与 bash 相同。
+     *
+     * @param pipeline 被计时的管道，构造失败时为 null
+     */
+    public void report(Pipeline pipeline, PrintStream out) {
+        long realNanos = System.nanoTime() - startNanos;
+        ResourceUsage childrenAfter = ResourceUsage.children();
+        ResourceUsage selfAfter = ResourceUsage.self();
+        StringBuilder report = new StringBuilder();
+        report.append('\n');
+        report.append("real\t").append(format(realNanos / 1000)).append('\n');
+
+        // 子进程都由 posix_spawn 启动时有每个进程自己的 wait4 结果；否则只能用 RUSAGE_CHILDREN 前后之差，
+        // 其中也包括这段时间里结束的后台作业，ru_maxrss 则是 shell 启动以来所有子进程的最大值
+        ResourceUsage exact = pipeline == null ? null : pipeline.childUsage();
+        if (exact != null || childrenBefore != null && childrenAfter != null) {
+            ResourceUsage children = exact != null ? exact : childrenAfter.since(childrenBefore);
+            report.append("user\t").append(format(children.userMicros())).append('\n');
+            report.append("sys\t").append(format(children.systemMicros())).append('\n');
+            // 子进程由 vfork 方式启动（JDK 与 posix_spawn 都是），exec 之前与 shell 共用地址空间，内核把 shell 的 RSS
+            // 也计入它的 ru_maxrss；因此只有超过 shell 自身峰值（且 RUSAGE_CHILDREN 的最大值确实被本命令刷新）时才是准确值，否则只是上限
+            long maxRss = children.maxRssKb();
+            boolean raised = exact != null || childrenAfter.maxRssKb() > childrenBefore.maxRssKb();
+            long shellRss = selfAfter == null ? 0 : selfAfter.maxRssKb();
+            if (maxRss > 0) {
+                report.append(raised && maxRss > shellRss ? "maxrss\t" : "maxrss\t<= ").append(maxRss).append(" KB\n");
+            }
+        }
+
+        report.append(String.format("shell\tparse %.3f ms, resolve %.3f ms, spawn %.3f ms, drain %.3f ms (%d bytes)",
+                parseNanos / 1e6,
+                pipeline == null ? 0 : pipeline.resolveNanos() / 1e6,
+                pipeline == null ? 0 : pipeline.spawnNanos() / 1e6,
+                pipeline == null ? 0 : pipeline.drainNanos() / 1e6,
+                pipeline == null ? 0 : pipeline.drainedBytes()));
+        if (selfBefore != null && selfAfter != null) {
+            // JVM 全部线程的 CPU，包括内建命令本身、转发线程以及 GC/JIT
+            ResourceUsage self = selfAfter.since(selfBefore);
+            report.append(String.format(", cpu %.3f ms", (self.userMicros() + self.systemMicros()) / 1e3));
+        }
+        report.append('\n');
+        out.print(report);
+        out.flush();
+    }
+
+    // bash 的格式：0m0.004s
+    private static String format(long micros) {
+        long minutes = micros / 60_000_000;
+        long millis = (micros % 60_000_000) / 1000;
+        return String.format("%dm%d.%03ds", minutes, millis / 1000, millis % 1000);
+    }
+}
@@ -3,6 +3,8 @@ import org.jline.reader.LineReader;
 import org.jline.utils.Log;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
 import java.time.Instant;
 import java.util.*;
@@ -25,14 +27,48 @@ public class CustomHistory implements History {
      */
     public static final int DEFAULT_HISTORY_FILE_SIZE = 10000;
 
-    private final List<History.Entry> items = new ArrayList<>();
+    // 环形缓冲，容量即 HISTORY_SIZE：满了以后新条目覆盖最旧的一条，其余条目原地不动
+    private History.Entry[] ring = new History.Entry[DEFAULT_HISTORY_SIZE];
 
+    // 最旧条目在 ring 中的位置
+    private int head = 0;
+
+    private int count = 0;
+
+    // 最旧条目的逻辑下标，即 first()；每淘汰一条加一，条目的 index() 因此在整个会话中单调递增
+    private int offset = 0;
+
+    // 当前位置，相对 offset
     private int index = 0;
 
+    // 去掉首尾空白的行 -> 该行最新一次出现的逻辑下标，用于 O(1) 去重。
+    // 条目按从旧到新的顺序淘汰，淘汰的正是某一行最新的一次出现时，说明内存中已没有这一行，从索引中删去
+    private final Map<String, Integer> lineIndex = new HashMap<>();
+
+    // 按时间顺序（从旧到新）的只读视图，供 iterator 使用
+    private final List<History.Entry> items = new AbstractList<History.Entry>() {
+        @Override
+        public History.Entry get(int position) {
+            Objects.checkIndex(position, count);
+            return entry(position);
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+    };
+
     private LineReader reader;
 
     private Map<String, CustomHistory.HistoryFileData> historyFiles = new HashMap<>();
 
+    // 历史文件在 attach 时不加载，第一次真正访问历史记录时才加载
+    private boolean loaded = true;
+
+    // 提示符下逐条追加（save）的后台写入；-Dshell.history.async=false 时为 null，同步写入
+    private final HistoryWriter writer = HistoryWriter.isEnabled() ? new HistoryWriter() : null;
+
     public CustomHistory() {}
 
     public CustomHistory(LineReader reader) {
@@ -82,7 +118,11 @@ public class CustomHistory implements History {
         return new CustomHistory.Entry(index, time, line);
     }
 
+    // lastLoaded 是逻辑下标（与 Entry.index() 同一编号），淘汰条目时不需要调整。
+    // entriesInFile 为 UNKNOWN 表示加载时只读了文件末尾、没有数过总行数，第一次需要时再数
     private static class HistoryFileData {
+        static final int UNKNOWN = -1;
+
         private int lastLoaded = 0;
         private int entriesInFile = 0;
 
@@ -101,13 +141,6 @@ public class CustomHistory implements History {
             this.lastLoaded = lastLoaded;
         }
 
-        public void decLastLoaded() {
-            lastLoaded = lastLoaded - 1;
-            if (lastLoaded < 0) {
-                lastLoaded = 0;
-            }
-        }
-
         public int getEntriesInFile() {
             return entriesInFile;
         }
@@ -117,7 +150,9 @@ public class CustomHistory implements History {
         }
 
         public void incEntriesInFile(int amount) {
-            entriesInFile = entriesInFile + amount;
+            if (entriesInFile != UNKNOWN) {
+                entriesInFile = entriesInFile + amount;
+            }
         }
     }
 
@@ -126,12 +161,14 @@ public class CustomHistory implements History {
 
     @Override
     public int size() {
-        return items.size();
+        ensureLoaded();
+        return count;
     }
 
     @Override
     public boolean isEmpty() {
-        return items.isEmpty();
+        ensureLoaded();
+        return count == 0;
     }
 
     /**
@@ -141,7 +178,8 @@ public class CustomHistory implements History {
      */
     @Override
     public int index() {
-        return index;
+        ensureLoaded();
+        return offset + index;
     }
 
     /**
@@ -151,7 +189,8 @@ public class CustomHistory implements History {
      */
     @Override
     public int first() {
-        return 0;
+        ensureLoaded();
+        return offset;
     }
 
     /**
@@ -161,16 +200,19 @@ public class CustomHistory implements History {
      */
     @Override
     public int last() {
-        return items.size() - 1;
+        ensureLoaded();
+        return offset + count - 1;
     }
 
     @Override
     public String get(int index) {
-        return items.get(index).line();
+        ensureLoaded();
+        return items.get(index - offset).line();
     }
 
     @Override
     public void add(Instant time, String line) {
+        ensureLoaded();
         Objects.requireNonNull(time);
         Objects.requireNonNull(line);
 
@@ -184,7 +226,7 @@ public class CustomHistory implements History {
             line = line.trim();
         }
         if (isSet(reader, LineReader.Option.HISTORY_IGNORE_DUPS)) {
-            if (!items.isEmpty() && line.equals(items.get(items.size() - 1).line())) {
+            if (count > 0 && line.equals(entry(count - 1).line())) {
                 return;
             }
         }
@@ -203,9 +245,9 @@ public class CustomHistory implements History {
 
     @Override
     public void add(String line) {
-        int newIndex = items.size();
-        items.add(new Entry(newIndex, line));
-        index = newIndex;
+        ensureLoaded();
+        push(new Entry(offset + count, line));
+        index = count - 1;
     }
 
     /**
@@ -216,7 +258,8 @@ public class CustomHistory implements History {
      */
     @Override
     public ListIterator<History.Entry> iterator(int index) {
-        return items.listIterator(index);
+        ensureLoaded();
+        return items.listIterator(index - offset);
     }
 
     @Override
@@ -231,10 +274,11 @@ public class CustomHistory implements History {
      */
     @Override
     public String current() {
+        ensureLoaded();
         if (index >= size()) {
             return "";
         }
-        return items.get(index).line();
+        return entry(index).line();
     }
 
     /**
@@ -244,6 +288,7 @@ public class CustomHistory implements History {
      */
     @Override
     public boolean previous() {
+        ensureLoaded();
         if (index <= 0) {
             return false;
         }
@@ -258,6 +303,7 @@ public class CustomHistory implements History {
      */
     @Override
     public boolean next() {
+        ensureLoaded();
         if (index >= size()) {
             return false;
         }
@@ -273,6 +319,7 @@ public class CustomHistory implements History {
      */
     @Override
     public boolean moveToFirst() {
+        ensureLoaded();
         if (size() > 0 && index != 0) {
             index = 0;
             return true;
@@ -289,6 +336,7 @@ public class CustomHistory implements History {
      */
     @Override
     public boolean moveToLast() {
+        ensureLoaded();
         int lastEntry = size() - 1;
         if (lastEntry >= 0 && lastEntry != index) {
             index = size() - 1;
@@ -306,6 +354,8 @@ public class CustomHistory implements History {
      */
     @Override
     public boolean moveTo(int index) {
+        ensureLoaded();
+        index -= offset;
         if (index >= 0 && index < size()) {
             this.index = index;
             return true;
@@ -319,6 +369,7 @@ public class CustomHistory implements History {
      */
     @Override
     public void moveToEnd() {
+        ensureLoaded();
         index = size();
     }
 
@@ -327,7 +378,8 @@ public class CustomHistory implements History {
      */
     @Override
     public void resetIndex() {
-        index = Math.min(index, items.size());
+        ensureLoaded();
+        index = Math.min(index, count);
     }
 
 
@@ -339,9 +391,10 @@ public class CustomHistory implements History {
     }
 
     public void save(File file) throws IOException {
+        ensureLoaded();
         if (file == null) return;
         Path path = file.toPath();
-        internalWrite(path, getLastLoaded(path));
+        internalWrite(path, getLastLoaded(path), false);
     }
 
     // Unused JLine features (we can ignore or provide empty implementations)
@@ -349,12 +402,21 @@ public class CustomHistory implements History {
     @Override public void attach(org.jline.reader.LineReader reader) {
         if (this.reader != reader) {
             this.reader = reader;
-            try {
-                load();
-            } catch (IllegalArgumentException | IOException e) {
-                Log.warn("Failed to load history", e);
-            }
+            loaded = false;
+        }
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
         }
+        long start = System.nanoTime();
+        try {
+            load();
+        } catch (IllegalArgumentException | IOException e) {
+            Log.warn("Failed to load history", e);
+        }
+        StartupProfile.lazy("history", start);
     }
 
     /**
@@ -364,29 +426,19 @@ public class CustomHistory implements History {
      */
     @Override
     public void load() throws IOException {
+        loaded = true;
+        flush();
         Path path = getPath();
         if (path != null) {
             try {
                 if (Files.exists(path)) {
                     Log.trace("Loading history from: ", path);
                     internalClear();
-                    boolean hasErrors = false;
-
-                    try (BufferedReader reader = Files.newBufferedReader(path)) {
-                        List<String> lines = reader.lines().collect(java.util.stream.Collectors.toList());
-                        for (String line : lines) {
-                            try {
-                                addHistoryLine(path, line);
-                            } catch (IllegalArgumentException e) {
-                                Log.debug("Skipping invalid history line: " + line, e);
-                                hasErrors = true;
-                            }
-                        }
-                    }
+                    boolean hasErrors = readTail(path);
 
                     // 重置 index
                     index = size();
-                    setHistoryFileData(path, new CustomHistory.HistoryFileData(items.size(), items.size()));
+                    setHistoryFileData(path, new CustomHistory.HistoryFileData(offset + count, HistoryFileData.UNKNOWN));
                     maybeResize();
 
                     // If we encountered errors, rewrite the history file with valid entries
@@ -410,7 +462,17 @@ public class CustomHistory implements History {
      */
     @Override
     public void save() throws IOException {
-        internalWrite(getPath(), getLastLoaded(getPath()));
+        ensureLoaded();
+        internalWrite(getPath(), getLastLoaded(getPath()), writer != null);
+    }
+
+    /**
+     * 等待后台写入的历史全部写进文件；退出前调用。
+     */
+    public void flush() {
+        if (writer != null) {
+            writer.flush();
+        }
     }
 
     /**
@@ -423,11 +485,14 @@ public class CustomHistory implements History {
      */
     @Override
     public void write(Path file, boolean incremental) throws IOException {
+        ensureLoaded();
         Path path = file != null ? file : getPath();
+        // 先写完队列中的追加，否则它们会接在重写后的文件后面
+        flush();
         if (path != null && Files.exists(path)) {
             Files.deleteIfExists(path);
         }
-        internalWrite(path, incremental ? getLastLoaded(path) : 0);
+        internalWrite(path, incremental ? getLastLoaded(path) : 0, false);
     }
 
     /**
@@ -440,7 +505,8 @@ public class CustomHistory implements History {
      */
     @Override
     public void append(Path file, boolean incremental) throws IOException {
-        internalWrite(file != null ? file : getPath(), incremental ? getLastLoaded(file) : 0);
+        ensureLoaded();
+        internalWrite(file != null ? file : getPath(), incremental ? getLastLoaded(file) : 0, false);
     }
 
     /**
@@ -453,26 +519,36 @@ public class CustomHistory implements History {
      */
     @Override
     public void read(Path file, boolean checkDuplicates) throws IOException {
+        ensureLoaded();
+        flush();
         Path path = file != null ? file : getPath();
         if (path != null) {
             try {
                 if (Files.exists(path)) {
                     Log.trace("Reading history from: ", path);
                     boolean hasErrors = false;
-
-                    try (BufferedReader reader = Files.newBufferedReader(path)) {
-                        List<String> lines = reader.lines().collect(java.util.stream.Collectors.toList());
-                        for (String line : lines) {
-                            try {
-                                addHistoryLine(path, line, checkDuplicates);
-                            } catch (IllegalArgumentException e) {
-                                Log.debug("Skipping invalid history line: " + line, e);
-                                hasErrors = true;
+                    int entries = HistoryFileData.UNKNOWN;
+
+                    if (checkDuplicates) {
+                        // 去重要按从旧到新的顺序判断，只能顺序读完整个文件
+                        entries = 0;
+                        try (BufferedReader reader = Files.newBufferedReader(path)) {
+                            String line;
+                            while ((line = reader.readLine()) != null) {
+                                try {
+                                    addHistoryLine(path, line, true);
+                                    entries++;
+                                } catch (IllegalArgumentException e) {
+                                    Log.debug("Skipping invalid history line: " + line, e);
+                                    hasErrors = true;
+                                }
                             }
                         }
+                    } else {
+                        hasErrors = readTail(path);
                     }
 
-                    setHistoryFileData(path, new CustomHistory.HistoryFileData(items.size(), items.size()));
+                    setHistoryFileData(path, new CustomHistory.HistoryFileData(offset + count, entries));
                     maybeResize();
 
                     // If we encountered errors, rewrite the history file with valid entries
@@ -489,8 +565,62 @@ public class CustomHistory implements History {
         }
     }
 
+    /**
+     * 从文件末尾向前读，只解析内存中放得下的最后 HISTORY_SIZE 行：更早的行加进来也会马上被淘汰，
+     * 因此不再读取，启动耗时与历史文件的长度无关。
+     *
+     * @param path 历史文件
+     * @return 是否遇到了无效的行
+     */
+    private boolean readTail(Path path) throws IOException {
+        int capacity = Math.max(1, getInt(reader, LineReader.HISTORY_SIZE, DEFAULT_HISTORY_SIZE));
+        // 从新到旧
+        List<String> tail = new ArrayList<>(Math.min(capacity, DEFAULT_HISTORY_FILE_SIZE));
+        try (ReverseLineReader lines = new ReverseLineReader(path)) {
+            String line;
+            while (tail.size() < capacity && (line = lines.readLine()) != null) {
+                tail.add(line);
+            }
+        }
+        boolean hasErrors = false;
+        for (int i = tail.size() - 1; i >= 0; i--) {
+            try {
+                addHistoryLine(path, tail.get(i));
+            } catch (IllegalArgumentException e) {
+                Log.debug("Skipping invalid history line: " + tail.get(i), e);
+                hasErrors = true;
+            }
+        }
+        return hasErrors;
+    }
+
+    // 文件的行数，与 BufferedReader 的分行一致：最后一行没有换行也算一行
+    private static int countLines(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        int lines = 0;
+        byte last = '\n';
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            while (channel.read(buffer) > 0) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    last = buffer.get();
+                    if (last == '\n') {
+                        lines++;
+                    }
+                }
+                buffer.clear();
+            }
+        }
+        return last == '\n' ? lines : lines + 1;
+    }
+
     @Override
     public void purge() throws IOException {
+        loaded = true;
+        flush();
         internalClear();
         Path path = getPath();
         if (path != null) {
@@ -516,9 +646,64 @@ public class CustomHistory implements History {
     }
 
     private void internalClear() {
+        offset = 0;
         index = 0;
+        head = 0;
+        count = 0;
+        Arrays.fill(ring, null);
+        lineIndex.clear();
         historyFiles = new HashMap<>();
-        items.clear();
+    }
+
+    // 第 position 条（0 为最旧）
+    private History.Entry entry(int position) {
+        int slot = head + position;
+        return ring[slot < ring.length ? slot : slot - ring.length];
+    }
+
+    // 追加到最新的位置；已满时覆盖最旧的一条，O(1)
+    private void push(History.Entry entry) {
+        int capacity = Math.max(1, getInt(reader, LineReader.HISTORY_SIZE, DEFAULT_HISTORY_SIZE));
+        if (capacity != ring.length) {
+            resize(capacity);
+        }
+        if (count == ring.length) {
+            unindex(ring[head], offset);
+            ring[head] = entry;
+            head = head + 1 == ring.length ? 0 : head + 1;
+            offset++;
+        } else {
+            int slot = head + count;
+            ring[slot < ring.length ? slot : slot - ring.length] = entry;
+            count++;
+        }
+        lineIndex.put(entry.line().trim(), offset + count - 1);
+    }
+
+    // 逻辑下标为 logical 的条目被淘汰
+    private void unindex(History.Entry entry, int logical) {
+        String key = entry.line().trim();
+        Integer newest = lineIndex.get(key);
+        if (newest != null && newest == logical) {
+            lineIndex.remove(key);
+        }
+    }
+
+    // HISTORY_SIZE 改变时才重新分配，保留最新的 capacity 条
+    private void resize(int capacity) {
+        int kept = Math.min(count, capacity);
+        for (int i = 0; i < count - kept; i++) {
+            unindex(entry(i), offset + i);
+        }
+        History.Entry[] resized = new History.Entry[capacity];
+        for (int i = 0; i < kept; i++) {
+            resized[i] = entry(count - kept + i);
+        }
+        offset += count - kept;
+        index = Math.max(0, index - (count - kept));
+        ring = resized;
+        head = 0;
+        count = kept;
     }
 
     private static String escape(String s) {
@@ -592,56 +777,62 @@ public class CustomHistory implements History {
     }
 
     protected void internalAdd(Instant time, String line, boolean checkDuplicates) {
-        int newIndex = items.size();
-        History.Entry entry = new Entry(newIndex , time, line);
-        if (checkDuplicates) {
-            for (History.Entry e : items) {
-                if (e.line().trim().equals(line.trim())) {
-                    return;
-                }
-            }
+        if (checkDuplicates && lineIndex.containsKey(line.trim())) {
+            return;
         }
-        items.add(entry);
-        index = newIndex;
-        maybeResize();
+        push(new Entry(offset + count, time, line));
+        index = count;
     }
 
+    // 淘汰已在 push 中完成，这里只在 HISTORY_SIZE 变小时收缩，并把当前位置移到末尾
     private void maybeResize() {
-        while (size() > getInt(reader, LineReader.HISTORY_SIZE, DEFAULT_HISTORY_SIZE)) {
-            items.remove(0);
-            for (CustomHistory.HistoryFileData hfd : historyFiles.values()) {
-                hfd.decLastLoaded();
-            }
+        int capacity = Math.max(1, getInt(reader, LineReader.HISTORY_SIZE, DEFAULT_HISTORY_SIZE));
+        if (capacity != ring.length) {
+            resize(capacity);
         }
         index = size();
     }
 
-    private void internalWrite(Path path, int from) throws IOException {
+    /**
+     * 把逻辑下标 from 之后的条目追加到 path。
+     *
+     * @param async 为 true 时只放进后台写入的队列；否则先写完队列再同步追加
+     */
+    private void internalWrite(Path path, int from, boolean async) throws IOException {
         if (path != null) {
             Log.trace("Saving history to: ", path);
-            Path parent = path.toAbsolutePath().getParent();
-            if (!Files.exists(parent)) {
-                Files.createDirectories(parent);
+            // from 是逻辑下标，早于 offset 的条目已被淘汰
+            int start = Math.max(from - offset, 0);
+            StringBuilder lines = new StringBuilder();
+            for (History.Entry entry : items.subList(Math.min(start, count), count)) {
+                if (isPersistable(entry)) {
+                    lines.append(format(entry));
+                }
             }
-            // Append new items to the history file
-            try (BufferedWriter writer = Files.newBufferedWriter(
-                    path.toAbsolutePath(),
-                    StandardOpenOption.WRITE,
-                    StandardOpenOption.APPEND,
-                    StandardOpenOption.CREATE)) {
-                for (History.Entry entry : items.subList(from, items.size())) {
-                    if (isPersistable(entry)) {
-                        writer.append(format(entry));
-                    }
+            if (async) {
+                writer.append(path, lines);
+            } else {
+                flush();
+                Path parent = path.toAbsolutePath().getParent();
+                if (!Files.exists(parent)) {
+                    Files.createDirectories(parent);
+                }
+                // Append new items to the history file
+                try (BufferedWriter fileWriter = Files.newBufferedWriter(
+                        path.toAbsolutePath(),
+                        StandardOpenOption.WRITE,
+                        StandardOpenOption.APPEND,
+                        StandardOpenOption.CREATE)) {
+                    fileWriter.append(lines);
                 }
             }
-            incEntriesInFile(path, items.size() - from);
+            incEntriesInFile(path, Math.max(count - start, 0));
             int max = getInt(reader, LineReader.HISTORY_FILE_SIZE, DEFAULT_HISTORY_FILE_SIZE);
             if (getEntriesInFile(path) > max + max / 4) {
                 trimHistory(path, max);
             }
         }
-        setLastLoaded(path, items.size());
+        setLastLoaded(path, offset + count);
     }
 
     private String doHistoryFileDataKey(Path path) {
@@ -684,8 +875,13 @@ public class CustomHistory implements History {
         return getHistoryFileData(path).getLastLoaded();
     }
 
-    private int getEntriesInFile(Path path) {
-        return getHistoryFileData(path).getEntriesInFile();
+    private int getEntriesInFile(Path path) throws IOException {
+        CustomHistory.HistoryFileData data = getHistoryFileData(path);
+        if (data.getEntriesInFile() == HistoryFileData.UNKNOWN) {
+            flush();
+            data.setEntriesInFile(countLines(path));
+        }
+        return data.getEntriesInFile();
     }
 
     protected void addHistoryLine(Path path, String line) {
@@ -721,84 +917,70 @@ public class CustomHistory implements History {
         }
     }
 
+    /**
+     * 把历史文件截断到最新的 max 条，同时去掉重复的行（只保留每行最后一次出现）。
+     * 从文件末尾向前读一遍，凑够 max 条不同的行即停止，更早的部分不再读取，耗时与文件长度成线性、内存只与 max 有关；
+     * 结果先写入同目录的临时文件，再原子替换原文件，中途失败或并发读取都不会看到写了一半的文件。
+     *
+     * @param path 历史文件
+     * @param max  保留的条数
+     */
     protected void trimHistory(Path path, int max) throws IOException {
         Log.trace("Trimming history path: ", path);
-        // Load all history entries
-        LinkedList<History.Entry> allItems = new LinkedList<>();
-        try (BufferedReader historyFileReader = Files.newBufferedReader(path)) {
-            List<String> lines = historyFileReader.lines().collect(java.util.stream.Collectors.toList());
-            for (String l : lines) {
+        flush();
+        // 保留的行，从新到旧；raw 为文件中的原文，写回时不必重新转义
+        List<String> kept = new ArrayList<>();
+        List<String> keptLines = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        try (ReverseLineReader historyFileReader = new ReverseLineReader(path)) {
+            String raw;
+            while (kept.size() < max && (raw = historyFileReader.readLine()) != null) {
+                String line;
                 try {
-//                    if (reader.isSet(LineReader.Option.HISTORY_TIMESTAMPED)) {
-//                        int idx = l.indexOf(':');
-//                        if (idx < 0) {
-//                            Log.debug("Skipping invalid history line: " + l);
-//                            continue;
-//                        }
-//                        try {
-//                            Instant time = Instant.ofEpochMilli(Long.parseLong(l.substring(0, idx)));
-//                            String line = unescape(l.substring(idx + 1));
-//                            allItems.add(createEntry(allItems.size(), time, line));
-//                        } catch (DateTimeException | NumberFormatException e) {
-//                            Log.debug("Skipping invalid history timestamp: " + l);
-//                        }
-//                    } else {
-//                        allItems.add(createEntry(allItems.size(), Instant.now(), unescape(l)));
-//                    }
-                    allItems.add(createEntry(allItems.size(), Instant.now(), unescape(l)));
-                } catch (Exception e) {
-                    Log.debug("Skipping invalid history line: " + l, e);
+                    line = unescape(raw);
+                } catch (RuntimeException e) {
+                    Log.debug("Skipping invalid history line: " + raw, e);
+                    continue;
+                }
+                if (seen.add(line.trim())) {
+                    kept.add(raw);
+                    keptLines.add(line);
                 }
             }
         }
-        // Remove duplicates
-        List<History.Entry> trimmedItems = doTrimHistory(allItems, max);
         // Write history
         Path temp = Files.createTempFile(
                 path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
-        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardOpenOption.WRITE)) {
-            for (History.Entry entry : trimmedItems) {
-                writer.append(format(entry));
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardOpenOption.WRITE)) {
+                for (int i = kept.size() - 1; i >= 0; i--) {
+                    writer.append(kept.get(i)).append('\n');
+                }
             }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
         }
-        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
         // Keep items in memory
         if (isLineReaderHistory(path)) {
+            // 文件中最新的一条就是内存中最新的一条，沿用现有编号，history 显示的序号不会跳变；
+            // 只放入内存容量以内的最新几条，更早的放进去也会马上被淘汰
+            int capacity = Math.max(1, getInt(reader, LineReader.HISTORY_SIZE, DEFAULT_HISTORY_SIZE));
+            int reload = Math.min(keptLines.size(), capacity);
+            int first = Math.max(0, offset + count - reload);
             internalClear();
-//            offset = trimmedItems.get(0).index();
-            items.addAll(trimmedItems);
-            setHistoryFileData(path, new CustomHistory.HistoryFileData(items.size(), items.size()));
+            offset = first;
+            Instant now = Instant.now();
+            for (int i = reload - 1; i >= 0; i--) {
+                push(createEntry(offset + count, now, keptLines.get(i)));
+            }
+            setHistoryFileData(path, new CustomHistory.HistoryFileData(offset + count, kept.size()));
         } else {
-            setEntriesInFile(path, allItems.size());
+            setEntriesInFile(path, kept.size());
         }
         maybeResize();
     }
 
-    static List<History.Entry> doTrimHistory(List<History.Entry> allItems, int max) {
-        int idx = 0;
-        while (idx < allItems.size()) {
-            int ridx = allItems.size() - idx - 1;
-            String line = allItems.get(ridx).line().trim();
-            ListIterator<History.Entry> iterator = allItems.listIterator(ridx);
-            while (iterator.hasPrevious()) {
-                String l = iterator.previous().line();
-                if (line.equals(l.trim())) {
-                    iterator.remove();
-                }
-            }
-            idx++;
-        }
-        while (allItems.size() > max) {
-            allItems.remove(0);
-        }
-        int  index = allItems.get(allItems.size() - 1).index() - allItems.size() + 1;
-        List<History.Entry> out   = new ArrayList<>();
-        for (History.Entry e : allItems) {
-            out.add(new CustomHistory.Entry(index++, e.time(), e.line()));
-        }
-        return out;
-    }
-
     private String format(History.Entry entry) {
 //        if (reader.isSet(LineReader.Option.HISTORY_TIMESTAMPED)) {
 //            return entry.time().toEpochMilli() + ":" + escape(entry.line()) + "\n";
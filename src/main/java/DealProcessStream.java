@@ -1,30 +1,73 @@
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
-public class DealProcessStream extends Thread {
+// 子进程输出的转发任务，由 DrainExecutor 的线程或调用方线程执行
+public class DealProcessStream implements Runnable {
+
+    // 每次读写的块大小，64K 与 Linux 管道默认容量一致
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    // 复用的缓冲区池，避免每个子进程都重新分配大块内存
+    private static final BlockingQueue<byte[]> BUFFERS = new ArrayBlockingQueue<>(8);
 
     private final InputStream inputStream;
 
+    private final OutputStream outputStream;
+
+    // 转发结束后可读：转发的字节数，以及写出这些字节花的时间（不含等待子进程输出的时间），即 shell 自身的转发开销
+    private volatile long bytes;
+    private volatile long nanos;
+
     public DealProcessStream(InputStream inputStream) {
+        this(inputStream, System.out);
+    }
+
+    public DealProcessStream(InputStream inputStream, OutputStream outputStream) {
         this.inputStream = inputStream;
+        this.outputStream = outputStream;
     }
 
+    @Override
     public void run() {
-
+        byte[] buffer = BUFFERS.poll();
+        if (buffer == null) {
+            buffer = new byte[BUFFER_SIZE];
+        }
+        long copied = 0;
+        long writing = 0;
         try{
             // Process 的管道是敏感资源，在子线程关闭会打乱 Process 的正常生命周期
             // 因此不能在这里关闭输入流，在这里关闭会导致Process甚至System.in输入流被提前关闭，影响后续进程（Process比较特殊）
-            BufferedReader br = new BufferedReader(new InputStreamReader(inputStream));
-            String line;
-            while ((line = br.readLine()) != null) {
-                System.out.println(line);
+            // 按字节原样转发：不做字符集解码/编码，不按行切分，二进制输出与超长行都不会被破坏
+            int n;
+            while ((n = inputStream.read(buffer)) != -1) {
+                long start = System.nanoTime();
+                outputStream.write(buffer, 0, n);
+                writing += System.nanoTime() - start;
+                copied += n;
             }
+            long start = System.nanoTime();
+            outputStream.flush();
+            writing += System.nanoTime() - start;
         } catch (IOException e) {
-            System.out.println(e.getMessage());
+            System.err.println(e.getMessage());
+        } finally {
+            BUFFERS.offer(buffer);
+            bytes = copied;
+            nanos = writing;
         }
 
     }
 
+    public long bytes() {
+        return bytes;
+    }
+
+    public long nanos() {
+        return nanos;
+    }
+
 }
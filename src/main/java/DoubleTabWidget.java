@@ -2,18 +2,20 @@ import org.jline.reader.LineReader;
 import org.jline.reader.Widget;
 import org.jline.terminal.Terminal;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.NavigableSet;
+import java.util.function.Supplier;
 
 public class DoubleTabWidget implements Widget {
 
     private final LineReader reader;
 
-    private final List<String> commands;
+    private final Supplier<NavigableSet<String>> commands;
 
     private Boolean showMatchesOnNextTab = false;
 
-    public DoubleTabWidget(LineReader reader, List<String> commands) {
+    public DoubleTabWidget(LineReader reader, Supplier<NavigableSet<String>> commands) {
         this.reader = reader;
         this.commands = commands;
     }
@@ -25,7 +27,8 @@ public class DoubleTabWidget implements Widget {
         int pos = reader.getBuffer().cursor();
 
         String prefix = line.substring(0, pos); // 光标前的内容
-        List<String> matches = commands.stream().filter(cmd -> cmd.startsWith(prefix)).sorted().collect(Collectors.toList());
+        // 命令名已经有序，以 prefix 开头的正好是一段连续区间，直接取出，不必逐个过滤再排序
+        List<String> matches = new ArrayList<>(commands.get().subSet(prefix, true, prefix + Character.MAX_VALUE, false));
 
         try {
             if (matches.isEmpty()) {
@@ -0,0 +1,116 @@
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 所有子进程输出转发（DealProcessStream）共用的线程池，替代每条流 new 一个 Thread。
+// 线程数有上限且空闲 30 秒后回收；-Dshell.drain.virtual=true 且运行在 JDK 21+ 时改用虚拟线程。
+// 死锁保证：同一个子进程的 stdout/stderr 必须被并发读取。池满时任务不会排队等待，而是交给临时线程立即执行，
+// 因此一条已提交的转发永远不会卡在其它长时间运行的转发之后
+public final class DrainExecutor {
+
+    private static final int MAX_THREADS = Integer.getInteger("shell.drain.threads",
+            Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+
+    private static final AtomicInteger QUEUED    = new AtomicInteger();
+    private static final AtomicInteger ACTIVE    = new AtomicInteger();
+    private static final AtomicLong    COMPLETED = new AtomicLong();
+    private static final AtomicLong    OVERFLOW  = new AtomicLong();
+
+    private static final AtomicInteger THREAD_ID = new AtomicInteger();
+
+    private static final ThreadFactory PLATFORM_THREADS = runnable -> {
+        Thread thread = new Thread(runnable, "drain-" + THREAD_ID.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    };
+
+    private static final ExecutorService EXECUTOR = create();
+
+    private DrainExecutor() {}
+
+    private static ExecutorService create() {
+        if (Boolean.getBoolean("shell.drain.virtual")) {
+            try {
+                // Executors.newVirtualThreadPerTaskExecutor() 只在 JDK 21+ 存在，编译目标仍是 11，因此反射调用
+                Method factory = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                return (ExecutorService) factory.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                // 旧 JDK，退回平台线程池
+            }
+        }
+        return new ThreadPoolExecutor(0, MAX_THREADS, 30, TimeUnit.SECONDS, new SynchronousQueue<>(), PLATFORM_THREADS,
+                (task, executor) -> {
+                    OVERFLOW.incrementAndGet();
+                    PLATFORM_THREADS.newThread(task).start();
+                });
+    }
+
+    /**
+     * 提交一条流的转发任务。
+     *
+     * @param drain 通常是一个 {@link DealProcessStream}
+     * @return 用于等待转发结束的 Future
+     */
+    public static Future<?> submit(Runnable drain) {
+        QUEUED.incrementAndGet();
+        FutureTask<Void> task = new FutureTask<>(() -> {
+            QUEUED.decrementAndGet();
+            ACTIVE.incrementAndGet();
+            try {
+                drain.run();
+            } finally {
+                ACTIVE.decrementAndGet();
+                COMPLETED.incrementAndGet();
+            }
+        }, null);
+        EXECUTOR.execute(task);
+        return task;
+    }
+
+    /**
+     * 等待转发任务结束。
+     */
+    public static void await(Future<?> drain) throws InterruptedException {
+        try {
+            drain.get();
+        } catch (ExecutionException e) {
+            System.err.println(e.getCause().getMessage());
+        }
+    }
+
+    // 已提交但尚未开始执行的转发数
+    public static int queued() {
+        return QUEUED.get();
+    }
+
+    // 正在执行的转发数
+    public static int active() {
+        return ACTIVE.get();
+    }
+
+    public static long completed() {
+        return COMPLETED.get();
+    }
+
+    // 池满时交给临时线程执行的次数
+    public static long overflow() {
+        return OVERFLOW.get();
+    }
+
+    public static int maxThreads() {
+        return MAX_THREADS;
+    }
+
+    public static String describe() {
+        return String.format("drains: queued=%d active=%d completed=%d overflow=%d max-threads=%d",
+                queued(), active(), completed(), overflow(), maxThreads());
+    }
+}
@@ -0,0 +1,124 @@
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// posix_spawn 启动一组命令时，下游阶段已经启动后某个阶段才启动失败：它在管道中的位置由这里占住，
+// 已经结束、退出码为 126/127，没有 pid。错误信息像 bash 一样写到该阶段的标准错误
+final class FailedProcess extends Process {
+
+    private final int          exitCode;
+    private final InputStream  stderr;
+
+    private FailedProcess(int exitCode, InputStream stderr) {
+        this.exitCode = exitCode;
+        this.stderr = stderr;
+    }
+
+    /**
+     * 按该阶段的标准错误重定向写出错误信息，返回代替它的 Process。
+     *
+     * @param exitCode 127（找不到文件）或 126（无法执行）
+     */
+    static Process report(ProcessBuilder builder, String path, int exitCode) {
+        String message = builder.command().get(0) + ": " + reason(path) + "\n";
+        ProcessBuilder.Redirect redirect = builder.redirectError();
+        InputStream stderr = InputStream.nullInputStream();
+        switch (redirect.type()) {
+            case PIPE:
+                // 由 Pipeline 像普通子进程的错误输出一样转发
+                stderr = new ByteArrayInputStream(message.getBytes(StandardCharsets.UTF_8));
+                break;
+            case WRITE:
+            case APPEND:
+                try (OutputStream out = new FileOutputStream(redirect.file(), redirect.type() == ProcessBuilder.Redirect.Type.APPEND)) {
+                    out.write(message.getBytes(StandardCharsets.UTF_8));
+                } catch (IOException e) {
+                    // 与子进程打不开重定向文件时一样，不再报告
+                }
+                break;
+            default:
+                PrintStream err = System.err;
+                err.print(message);
+                err.flush();
+                break;
+        }
+        return new FailedProcess(exitCode, stderr);
+    }
+
+    private static String reason(String path) {
+        File file = new File(path);
+        if (!file.exists()) {
+            return "No such file or directory";
+        }
+        if (file.isDirectory()) {
+            return "Is a directory";
+        }
+        if (!file.canExecute()) {
+            return "Permission denied";
+        }
+        return "cannot execute binary file: Exec format error";
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        // 内建的上游阶段写入的内容直接丢弃
+        return OutputStream.nullOutputStream();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return InputStream.nullInputStream();
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+        return stderr;
+    }
+
+    @Override
+    public int waitFor() {
+        return exitCode;
+    }
+
+    @Override
+    public boolean waitFor(long timeout, TimeUnit unit) {
+        return true;
+    }
+
+    @Override
+    public int exitValue() {
+        return exitCode;
+    }
+
+    @Override
+    public boolean isAlive() {
+        return false;
+    }
+
+    @Override
+    public CompletableFuture<Process> onExit() {
+        return CompletableFuture.completedFuture(this);
+    }
+
+    // 没有对应的进程；调用方（Pipeline.pids）跳过非正数，不会对它发送信号
+    @Override
+    public long pid() {
+        return -1;
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    @Override
+    public boolean supportsNormalTermination() {
+        return true;
+    }
+}
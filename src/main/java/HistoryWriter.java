@@ -0,0 +1,174 @@
+import org.jline.utils.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// 历史文件的后台写入：提示符下每条命令产生的追加只放进队列，由一个后台线程写入，
+// 写入期间新来的内容合并成下一批，一次打开文件写完（group commit），主循环不再等待磁盘。
+// -Dshell.history.async=false 关闭，恢复为同步追加；-Dshell.history.fsync=N 时由定时任务每 N 秒把写过的文件 fsync 一次，
+// 停止输入后最近的命令最迟 N 秒也会落盘；默认交给操作系统。
+// 其它直接读写历史文件的操作（history -r/-w/-a、截断、重新加载）之前先 flush，看到的文件总是完整的
+final class HistoryWriter {
+
+    private static final long FSYNC_INTERVAL = Long.getLong("shell.history.fsync", 0);
+
+    // 待写入的内容，按文件合并；键为绝对路径
+    private final Map<Path, StringBuilder> pending = new LinkedHashMap<>();
+
+    // 后台线程正在写一批
+    private boolean writing;
+
+    private Thread thread;
+
+    // 写过但还没有 fsync 的文件；写入线程与定时任务都只在持有本对象的锁时访问
+    private final Set<Path> unsynced = new HashSet<>();
+
+    private ScheduledExecutorService syncer;
+
+    static boolean isEnabled() {
+        return Boolean.parseBoolean(System.getProperty("shell.history.async", "true"));
+    }
+
+    /**
+     * 把若干行加入 path 的写入队列，立即返回。
+     *
+     * @param lines 已格式化、以换行结尾的行
+     */
+    synchronized void append(Path path, CharSequence lines) {
+        if (lines.length() == 0) {
+            return;
+        }
+        pending.computeIfAbsent(path.toAbsolutePath(), key -> new StringBuilder()).append(lines);
+        if (thread == null) {
+            start();
+        }
+        notifyAll();
+    }
+
+    /**
+     * 等待已排队的内容全部写入文件。
+     */
+    synchronized void flush() {
+        boolean interrupted = false;
+        while (!pending.isEmpty() || writing) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // 第一次追加时启动后台线程，并在 JVM 退出时写完剩余的内容
+    private void start() {
+        thread = new Thread(this::run, "history-writer");
+        thread.setDaemon(true);
+        thread.start();
+        if (FSYNC_INTERVAL > 0) {
+            syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread sync = new Thread(runnable, "history-sync");
+                sync.setDaemon(true);
+                return sync;
+            });
+            syncer.scheduleWithFixedDelay(this::sync, FSYNC_INTERVAL, FSYNC_INTERVAL, TimeUnit.SECONDS);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "history-writer-final"));
+    }
+
+    private void run() {
+        while (true) {
+            Map<Path, StringBuilder> batch;
+            synchronized (this) {
+                while (pending.isEmpty()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        // 守护线程，不响应中断
+                    }
+                }
+                batch = new LinkedHashMap<>(pending);
+                pending.clear();
+                writing = true;
+            }
+            try {
+                for (Map.Entry<Path, StringBuilder> entry : batch.entrySet()) {
+                    write(entry.getKey(), entry.getValue());
+                }
+            } finally {
+                synchronized (this) {
+                    writing = false;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    private void write(Path path, CharSequence lines) {
+        try {
+            Path parent = path.getParent();
+            if (parent != null && !Files.exists(parent)) {
+                Files.createDirectories(parent);
+            }
+            try (FileChannel channel = FileChannel.open(path,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND, StandardOpenOption.CREATE)) {
+                ByteBuffer bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(lines));
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+            }
+            if (FSYNC_INTERVAL > 0) {
+                synchronized (this) {
+                    unsynced.add(path);
+                }
+            }
+        } catch (IOException e) {
+            Log.warn("Failed to save history", e);
+        }
+    }
+
+    // fsync 上次之后写过的文件。fsync 可能很慢，在锁外进行；期间写入的文件重新记入 unsynced，下一次再同步
+    private void sync() {
+        List<Path> paths;
+        synchronized (this) {
+            if (unsynced.isEmpty()) {
+                return;
+            }
+            paths = new ArrayList<>(unsynced);
+            unsynced.clear();
+        }
+        for (Path path : paths) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.force(false);
+            } catch (NoSuchFileException e) {
+                // 文件已被 purge 删除，无需同步
+            } catch (IOException e) {
+                Log.warn("Failed to sync history", e);
+            }
+        }
+    }
+
+    // 写完队列；开启了 fsync 时把还没同步过的文件也同步一次
+    private void close() {
+        flush();
+        sync();
+    }
+}
@@ -0,0 +1,202 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// 后台作业表。作业结束由 Pipeline.onExit 异步通知，作业表本身不为每个作业阻塞一个线程等待；
+// 子进程的回收：posix_spawn 启动的由 ChildReaper 的一个线程统一回收，ProcessBuilder 启动的仍由 JDK 为每个进程各占一个回收线程。
+// 结束的作业先放进队列，在下一个提示符前（或 jobs、wait 时）统一收取并报告。
+// 没有作业控制：后台作业不单独成组、不能拿回终端，fg 只报错，bg 只是让被暂停的作业继续
+public class JobTable {
+
+    public enum State {
+        RUNNING("Running"),
+        STOPPED("Stopped"),
+        DONE("Done");
+
+        private final String label;
+
+        State(String label) {
+            this.label = label;
+        }
+    }
+
+    public static class Job {
+        private final int                        id;
+        private final String                     command;
+        private final Pipeline                   pipeline;
+        private final List<Long>                 pids;
+        private final CompletableFuture<Integer> exit;
+
+        Job(int id, String command, Pipeline pipeline) {
+            this.id = id;
+            this.command = command;
+            this.pipeline = pipeline;
+            this.pids = pipeline.pids();
+            this.exit = pipeline.onExit();
+        }
+
+        public int id() {
+            return id;
+        }
+
+        public String command() {
+            return command;
+        }
+
+        public List<Long> pids() {
+            return pids;
+        }
+
+        // 管道中最后一个进程的 pid，全部是内建命令时为 -1
+        public long pid() {
+            return pids.isEmpty() ? -1 : pids.get(pids.size() - 1);
+        }
+
+        public boolean isDone() {
+            return exit.isDone();
+        }
+
+        /**
+         * 等待作业结束。
+         *
+         * @return 最后一个阶段的退出码
+         */
+        public int waitFor() throws InterruptedException {
+            return pipeline.waitFor();
+        }
+
+        public State state() {
+            if (isDone()) {
+                return State.DONE;
+            }
+            for (long pid : pids) {
+                if (isStopped(pid)) {
+                    return State.STOPPED;
+                }
+            }
+            return State.RUNNING;
+        }
+    }
+
+    // 按作业号排序
+    private final NavigableMap<Integer, Job> jobs = new TreeMap<>();
+
+    private final Queue<Job> finished = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 登记一个已经启动的后台管道。
+     */
+    public synchronized Job add(String command, Pipeline pipeline) {
+        int id = jobs.isEmpty() ? 1 : jobs.lastKey() + 1;
+        Job job = new Job(id, command, pipeline);
+        jobs.put(id, job);
+        job.exit.whenComplete((status, e) -> finished.add(job));
+        return job;
+    }
+
+    /**
+     * 按 bash 的写法查找作业：%n、%+、%%、%-，或管道中任一进程的 pid；spec 为 null 时返回当前作业。
+     *
+     * @return 找不到时返回 null
+     */
+    public synchronized Job find(String spec) {
+        if (spec == null || "%+".equals(spec) || "%%".equals(spec) || "%".equals(spec)) {
+            return jobs.isEmpty() ? null : jobs.lastEntry().getValue();
+        }
+        if ("%-".equals(spec)) {
+            Map.Entry<Integer, Job> previous = jobs.isEmpty() ? null : jobs.lowerEntry(jobs.lastKey());
+            return previous != null ? previous.getValue() : null;
+        }
+        try {
+            if (spec.startsWith("%")) {
+                return jobs.get(Integer.parseInt(spec.substring(1)));
+            }
+            long pid = Long.parseLong(spec);
+            for (Job job : jobs.values()) {
+                if (job.pids.contains(pid)) {
+                    return job;
+                }
+            }
+        } catch (NumberFormatException e) {
+            // 不是数字，按找不到处理
+        }
+        return null;
+    }
+
+    public synchronized List<Job> list() {
+        return new ArrayList<>(jobs.values());
+    }
+
+    public synchronized void remove(Job job) {
+        jobs.remove(job.id, job);
+    }
+
+    /**
+     * 收取已经结束的作业并从作业表中移除。
+     *
+     * @param out 按 bash 的格式报告 Done/Exit，为 null 时只移除（非交互模式）
+     */
+    public void reapFinished(PrintStream out) {
+        Job job;
+        while ((job = finished.poll()) != null) {
+            char marker = marker(job);
+            synchronized (this) {
+                if (!jobs.remove(job.id, job)) {
+                    // 已由 wait 收取
+                    continue;
+                }
+            }
+            if (out != null) {
+                out.println(format(job, marker, false));
+            }
+        }
+    }
+
+    /**
+     * 当前作业为 +，前一个为 -，其余为空格。
+     */
+    public synchronized char marker(Job job) {
+        if (jobs.isEmpty()) {
+            return ' ';
+        }
+        if (jobs.lastKey() == job.id) {
+            return '+';
+        }
+        Integer previous = jobs.lowerKey(jobs.lastKey());
+        return previous != null && previous == job.id ? '-' : ' ';
+    }
+
+    /**
+     * jobs 的一行，例如 "[1]+  Running                 sleep 10 &"。
+     *
+     * @param withPid 是否在作业号后显示 pid（jobs -l）
+     */
+    public String format(Job job, char marker, boolean withPid) {
+        State state = job.state();
+        String label = state.label;
+        if (state == State.DONE) {
+            int status = job.exit.join();
+            if (status != 0) {
+                label = "Exit " + status;
+            }
+        }
+        String pid = withPid && job.pid() > 0 ? job.pid() + " " : "";
+        return String.format("[%d]%c  %s%-24s%s%s", job.id, marker, pid, label, job.command,
+                             state == State.RUNNING ? " &" : "");
+    }
+
+    // Linux 上读取 /proc/<pid>/stat 的进程状态，T 为被信号暂停
+    private static boolean isStopped(long pid) {
+        try {
+            String stat = new String(Files.readAllBytes(Paths.get("/proc", String.valueOf(pid), "stat")));
+            int close = stat.lastIndexOf(')');
+            return close > 0 && close + 2 < stat.length() && stat.charAt(close + 2) == 'T';
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+}
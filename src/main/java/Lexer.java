@@ -0,0 +1,90 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// 词法分析：对输入行做一次线性扫描，切分出单词与操作符。
+// 引号、转义只在这里识别一次，之后的解析不再重新扫描文本
+public class Lexer {
+
+    private Lexer() {}
+
+    /**
+     * @throws IllegalArgumentException 引号没有闭合
+     */
+    public static List<Token> tokenize(String line) {
+        List<Token> tokens = new ArrayList<>();
+        int length = line.length();
+        int i = 0;
+        while (i < length) {
+            char c = line.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '#') {
+                // 单词开头的 # 之后是注释（a#b 中的 # 是普通字符）
+                break;
+            } else if (c == '|') {
+                tokens.add(Token.operator(Token.Type.PIPE, line, i, i + 1));
+                i++;
+            } else if (c == ';' || c == '&') {
+                tokens.add(Token.operator(Token.Type.SEPARATOR, line, i, i + 1));
+                i++;
+            } else if (c == '>' || (c == '1' || c == '2') && i + 1 < length && line.charAt(i + 1) == '>') {
+                // 只有单独出现在单词开头的 1、2 才是文件描述符，例如 a2>f 中的 a2 是普通单词
+                int start = i;
+                int fd = c == '>' ? 1 : c - '0';
+                i += c == '>' ? 1 : 2;
+                boolean append = i < length && line.charAt(i) == '>';
+                if (append) {
+                    i++;
+                }
+                tokens.add(Token.redirect(line, start, i, fd, append));
+            } else {
+                i = word(line, i, tokens);
+            }
+        }
+        return tokens;
+    }
+
+    // 读取从 start 开始的一个单词，相邻的引号段与普通字符连成同一个单词，返回单词之后的位置
+    private static int word(String line, int start, List<Token> tokens) {
+        int length = line.length();
+        boolean quoted = false;
+        int i = start;
+        while (i < length) {
+            char c = line.charAt(i);
+            if (c == '\\') {
+                quoted = true;
+                i = Math.min(i + 2, length);
+            } else if (c == '\'') {
+                quoted = true;
+                int close = line.indexOf('\'', i + 1);
+                if (close < 0) {
+                    throw new IllegalArgumentException("unexpected EOF while looking for matching `''");
+                }
+                i = close + 1;
+            } else if (c == '"') {
+                quoted = true;
+                i = closingDoubleQuote(line, i + 1) + 1;
+            } else if (Character.isWhitespace(c) || c == '|' || c == ';' || c == '&' || c == '>') {
+                break;
+            } else {
+                i++;
+            }
+        }
+        tokens.add(Token.word(line, start, i, quoted));
+        return i;
+    }
+
+    private static int closingDoubleQuote(String line, int from) {
+        int length = line.length();
+        for (int i = from; i < length; i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                return i;
+            }
+            if (c == '\\' && i + 1 < length && Token.isDoubleQuoteEscape(line.charAt(i + 1))) {
+                i++;
+            }
+        }
+        throw new IllegalArgumentException("unexpected EOF while looking for matching `\"'");
+    }
+}
@@ -1,28 +1,102 @@
-import jnr.posix.POSIX;
-import jnr.posix.POSIXFactory;
+import jnr.constants.platform.Signal;
 import org.jline.reader.*;
 import org.jline.terminal.Terminal;
 import org.jline.terminal.TerminalBuilder;
 
 import java.io.*;
+import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.function.Supplier;
 
 public class Main {
+    // exit 内建命令置位，主循环据此退出
+    private static boolean exitRequested = false;
+
+    private static int exitStatus = 0;
+
+    // 交互模式下才报告后台作业的启动与结束
+    private static boolean interactive = false;
+
+    private static final JobTable jobs = new JobTable();
+
+    private static final String USAGE = "usage: [--profile-startup] [-i] [-e] [-c command | script]";
+
     public static void main(String[] args) throws Exception {
-        Map<String, String> pathMap = getEnv();
+        StartupProfile.touch();
+        String command = null;
+        String script = null;
+        boolean forceInteractive = false;
+        for (int i = 0; i < args.length && script == null; i++) {
+            String arg = args[i];
+            if ("--profile-startup".equals(arg)) {
+                StartupProfile.enable();
+            } else if ("-i".equals(arg)) {
+                forceInteractive = true;
+            } else if ("-c".equals(arg)) {
+                if (i + 1 == args.length) {
+                    // 与 sh -c 相同：缺少命令字符串是用法错误
+                    System.err.println("-c: option requires an argument");
+                    System.err.println(USAGE);
+                    System.exit(2);
+                    return;
+                }
+                command = args[++i];
+                break;
+            } else if ("-e".equals(arg)) {
+                ShellOptions.set("errexit", true);
+            } else {
+                script = arg;
+            }
+        }
+        // PATH 不再在启动时整体扫描，命令在第一次使用时才解析
+        CommandHash commandHash = new CommandHash();
+        BuiltinRegistry builtins = new BuiltinRegistry();
+        StartupProfile.mark("command-hash");
+
+        int status;
+        if (command != null) {
+            status = runBatch(new BufferedReader(new StringReader(command)), builtins, commandHash);
+        } else if (script != null) {
+            BufferedReader reader;
+            try {
+                reader = Files.newBufferedReader(Paths.get(script));
+            } catch (IOException e) {
+                System.err.println(script + ": No such file or directory");
+                System.exit(127);
+                return;
+            }
+            try (BufferedReader in = reader) {
+                status = runBatch(in, builtins, commandHash);
+            }
+        } else if (!forceInteractive && !isTerminal()) {
+            // 标准输入是管道或文件：按脚本逐行执行
+            status = runBatch(new BufferedReader(new InputStreamReader(System.in)), builtins, commandHash);
+        } else {
+            status = runInteractive(builtins, commandHash);
+        }
+        System.out.flush();
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+    // 交互模式：JLine 终端、补全、历史
+    private static int runInteractive(BuiltinRegistry builtins, CommandHash commandHash) throws IOException {
+        // 补全用的命令索引在第一次按 Tab 时才开始加载，之后在后台并行扫描
+        PathIndex pathIndex = new PathIndex();
+        CommandStats.watch(pathIndex);
         try (Terminal terminal = TerminalBuilder.builder().system(true).provider("jni").build()) {
-            List<String> commands  = new ArrayList<>(pathMap.keySet());
-            List<String> builtinCommands = new ArrayList<>(Arrays.asList("echo", "cat","type", "exit"));
-            commands.addAll(builtinCommands);
-            commands = commands.stream().distinct().sorted().collect(Collectors.toList());
-            Completer completer = new StringsCompleter(commands);
-            // 使用终端
+            StartupProfile.mark("terminal");
+            // 每次补全都直接读取索引这个有序集合（内建命令注册后并入），不复制也不重新排序；扫描未完成时候选会逐步补齐
+            Supplier<NavigableSet<String>> commands = pathIndex::names;
+            Completer completer = new StringsCompleter(commands::get);
+            // 使用终端；历史文件在第一次用到历史记录时才加载
+            CustomHistory history = new CustomHistory();
             LineReader lineReader = LineReaderBuilder.builder()
                                                      .terminal(terminal)
                                                      .completer(completer) // 自动补全
-                                                     .history(new CustomHistory())
+                                                     .history(history)
                                                      .option(LineReader.Option.HISTORY_IGNORE_DUPS, false) // 允许重复记录
                                                      .option(LineReader.Option.DISABLE_EVENT_EXPANSION, true) // 禁用自动转义
                                                      .option(LineReader.Option.AUTO_MENU, false)
@@ -31,324 +105,356 @@ public class Main {
             lineReader.getWidgets().put("double-tab", widget);
             // 绑定 Tab 键到自定义 widget
             lineReader.getKeyMaps().get(LineReader.MAIN).bind(new Reference("double-tab"), "\t");
-            // 使用posix用以动态切换工作目录
-            POSIX posix = POSIXFactory.getPOSIX(new PosixHandler(), true);
 
-            while (true) {
-                String input = lineReader.readLine("$ ");
+            registerBuiltins(builtins, commandHash, lineReader.getHistory());
+            pathIndex.include(builtins.names());
 
-                if (input.equals("exit 0") | input.equals("exit")) {
-                    break;
-                }
-                Command command = Command.fromInput(input);
-                if (command == null) {
-                    continue;
-                }
-                String commandName = command.getCommandName();
-                List<String> params = command.getArgs();
-                if ("echo".equals(commandName)) {
-                    // 检测重定向
-                    if (params.contains(">") || params.contains("1>") || params.contains("2>")) {
-                        redirectOutput(params, commandName);
-                        continue;
-                    }
-                    if (params.contains(">>") || params.contains("1>>") || params.contains("2>>")) {
-                        redirectAppendOutput(params, commandName);
-                        continue;
-                    }
-                    if (params.contains("|")) {
-                        params.removeIf(" "::equals);
-                        pipelineOutput(params, commandName);
-                        continue;
-                    }
-                    for (String param : params) {
-                        System.out.print(param);
-                    }
-                    System.out.println();
+            Main.interactive = true;
+            int status = 0;
+            while (!exitRequested) {
+                jobs.reapFinished(System.out);
+                StartupProfile.firstPrompt();
+                String input;
+                try {
+                    input = lineReader.readLine("$ ");
+                } catch (UserInterruptException e) {
+                    // Ctrl-C 只放弃当前行
                     continue;
+                } catch (EndOfFileException e) {
+                    // Ctrl-D
+                    break;
                 }
+                status = execute(input, builtins, commandHash);
+            }
+            // exit 或 Ctrl-D：等后台写入的历史落盘再退出
+            history.flush();
+            return exitRequested ? exitStatus : status;
+        }
+    }
 
-                if ("cat".equals(commandName)) {
-                    // 移除空格
-                    params.removeIf(" "::equals);
-                    // 检测重定向
-                    if (params.contains(">") || params.contains("1>") || params.contains("2>")) {
-                        redirectOutput(params, commandName);
-                        continue;
-                    }
-                    if (params.contains(">>") || params.contains("1>>") || params.contains("2>>")) {
-                        redirectAppendOutput(params, commandName);
-                        continue;
-                    }
-                    if (params.contains("|")) {
-                        pipelineOutput(params, commandName);
-                        continue;
-                    }
-                    params.add(0, "cat");
-                    Process process = new ProcessBuilder(params).start();
-                    //新启两个线程
-                    DealProcessStream out = new DealProcessStream(process.getInputStream());
-                    DealProcessStream err = new DealProcessStream(process.getErrorStream());
-                    out.start();
-                    err.start();
-                    out.join();
-                    err.join();
-                    process.waitFor();
-                    // destroy() 只在需要强制杀进程时使用。否则可能正在读，IO就关闭了，然后报错Stream closed
-//                process.destroy();
-                    continue;
-
-                }
-                if ("history".equals(commandName)) {
-                    History history = lineReader.getHistory();
-                    if(params.isEmpty()) {
-                        for (History.Entry entry : history) {
-                            System.out.println("    " + (entry.index() + 1) + "  " + entry.line());
-                        }
-                    } else if (params.size() > 2) {
-                            if("-r".equals(params.get(0))) {
-                                String historyFilePathStr = params.get(2);
-                                history.read(Paths.get(historyFilePathStr), false);
+    // 批处理模式（脚本文件、-c、管道输入）：不初始化终端，没有补全和历史，逐行读取执行，以最后一条命令的状态退出
+    private static int runBatch(BufferedReader reader, BuiltinRegistry builtins, CommandHash commandHash) throws IOException {
+        registerBuiltins(builtins, commandHash, null);
+        int status = 0;
+        String line;
+        while (!exitRequested && (line = reader.readLine()) != null) {
+            status = execute(line, builtins, commandHash);
+            jobs.reapFinished(null);
+        }
+        return exitRequested ? exitStatus : status;
+    }
 
-                            } else if("-w".equals(params.get(0))) {
-                                String historyFilePathStr = params.get(2);
-                                history.write(Paths.get(historyFilePathStr), false);
-                            } else if("-a".equals(params.get(0))) {
-                                String historyFilePathStr = params.get(2);
-                                history.append(Paths.get(historyFilePathStr), true);
-                            }
+    // 标准输入是否为终端，只看 fd 0：输出重定向到文件（./your_program.sh > log）时仍是交互模式。
+    // System.console() 在 JDK 22 之前要求 stdout 也是终端，JDK 22 起的 isTerminal() 同样检查 stdout，
+    // 只在没有本地绑定、无法调用 isatty 时才退回到它
+    private static boolean isTerminal() {
+        if (Posix.get().isNative()) {
+            return Posix.get().isatty(0) == 1;
+        }
+        Console console = System.console();
+        if (console == null) {
+            return false;
+        }
+        try {
+            return (Boolean) Console.class.getMethod("isTerminal").invoke(console);
+        } catch (ReflectiveOperationException e) {
+            return true;
+        }
+    }
 
-                    } else {
-                    int count = Integer.parseInt(params.get(0));
-                    int size = history.size();
-                    // 只打印最后 count 条
-                    for (int i = size - count; i < size; i++) {
-                        String line = history.get(i);
-                        System.out.println("    " + (i + 1) + "  " + line);
-                    }
-                }
-                    continue;
+    /**
+     * @param history 交互模式的历史记录，批处理模式为 null
+     */
+    private static void registerBuiltins(BuiltinRegistry builtins, CommandHash commandHash, History history) {
+        builtins.register("echo", Main::echo);
+        builtins.register("exit", Main::exit);
+        builtins.register("type", (args, in, out, err) -> type(args, out, builtins, commandHash));
+        builtins.register("pwd", (args, in, out, err) -> {
+            out.println(System.getProperty("user.dir"));
+            return 0;
+        });
+        builtins.register("cd", (args, in, out, err) -> cd(args, err));
+        // 批处理模式与 bash 一样不记录历史，history 什么也不输出
+        builtins.register("history", (args, in, out, err) -> history == null ? 0 : history(args, out, history));
+        builtins.register("set", (args, in, out, err) -> ShellOptions.set(args, out, err));
+        builtins.register("jobs", (args, in, out, err) -> jobs(args, out));
+        builtins.register("wait", (args, in, out, err) -> waitJobs(args, err));
+        builtins.register("fg", (args, in, out, err) -> fg(err));
+        builtins.register("bg", (args, in, out, err) -> bg(args, out, err));
+        builtins.register("parallel", new Parallel(builtins, commandHash));
+        builtins.register("hash", (args, in, out, err) -> hash(args, out, err, commandHash));
+        builtins.register("stats", (args, in, out, err) -> CommandStats.stats(args, out, err));
+        // cat 仍是 PATH 中的外部命令（type cat 照常报告其路径），不带选项时在进程内完成
+        builtins.replace("cat", new Cat(), Cat::supports);
+    }
 
-                }
-                if ("type".equals(commandName)) {
-                    Set<String> builtin = new HashSet<>(Arrays.asList("type", "echo", "exit","history","pwd","cd"));
-                    String arg = String.join(" ", params);
-                    if (builtin.contains(arg)) {
-                        System.out.println(arg + " is a shell builtin");
-                        continue;
-                    }
+    // 执行一行输入：先整体解析，再依次执行其中的各个管道；管道、重定向、内建命令与外部命令都统一交给 Pipeline
+    private static int execute(String input, BuiltinRegistry builtins, CommandHash commandHash) {
+        CommandLine commandLine;
+        long parseStart = System.nanoTime();
+        try {
+            commandLine = Parser.parse(input);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return 2;
+        }
+        long parseNanos = System.nanoTime() - parseStart;
+        int status = 0;
+        for (CommandLine.Entry entry : commandLine.entries()) {
+            status = entry.isBackground()
+                    ? runInBackground(entry, builtins, commandHash, parseNanos)
+                    : run(entry, builtins, commandHash, parseNanos);
+            if (status != 0 && ShellOptions.isSet("errexit") && !exitRequested) {
+                // set -e：命令失败即退出 shell
+                exitRequested = true;
+                exitStatus = status;
+            }
+            if (exitRequested) {
+                break;
+            }
+        }
+        return status;
+    }
 
-                    if (pathMap.containsKey(arg)) {
-                        System.out.println(arg + " is " + pathMap.get(arg));
-                        continue;
-                    }
+    // 以 time 开头时在结束后报告耗时；各阶段耗时按命令名计入 CommandStats
+    private static int run(CommandLine.Entry entry, BuiltinRegistry builtins, CommandHash commandHash, long parseNanos) {
+        CommandTimer timer = entry.isTimed() ? CommandTimer.start(parseNanos) : null;
+        long start = System.nanoTime();
+        Pipeline pipeline = Pipeline.of(entry.commands(), builtins, commandHash);
+        try {
+            return pipeline.run();
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            return 126;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 130;
+        } finally {
+            CommandStats.record(commandName(entry), parseNanos, pipeline, System.nanoTime() - start);
+            if (timer != null) {
+                timer.report(pipeline, System.err);
+            }
+        }
+    }
 
-                    System.out.println(arg + ": not found");
-                    continue;
-                }
+    // 管道第一个命令的名字，用作统计的维度；单独的 time 或只有重定向时为 null
+    private static String commandName(CommandLine.Entry entry) {
+        return entry.commands().isEmpty() ? null : entry.commands().get(0).getCommandName();
+    }
 
-                if("pwd".equals(commandName)) {
-                    String currentDir = System.getProperty("user.dir");
-                    System.out.println(currentDir);
-                    continue;
+    // cmd &：启动后立即返回，作业交给作业表跟踪
+    private static int runInBackground(CommandLine.Entry entry, BuiltinRegistry builtins, CommandHash commandHash, long parseNanos) {
+        CommandTimer timer = entry.isTimed() ? CommandTimer.start(parseNanos) : null;
+        long start = System.nanoTime();
+        try {
+            Pipeline pipeline = Pipeline.of(entry.commands(), builtins, commandHash);
+            pipeline.start(true);
+            pipeline.onExit().thenRun(() -> {
+                CommandStats.record(commandName(entry), parseNanos, pipeline, System.nanoTime() - start);
+                if (timer != null) {
+                    // 与 bash 相同，后台作业的计时在它结束时输出
+                    timer.report(pipeline, System.err);
                 }
+            });
+            JobTable.Job job = jobs.add(entry.text(), pipeline);
+            if (interactive) {
+                System.err.println("[" + job.id() + "] " + (job.pid() > 0 ? job.pid() : ProcessHandle.current().pid()));
+            }
+            return 0;
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            return 126;
+        }
+    }
 
-                if("cd".equals(commandName)) {
-                    if(params.isEmpty()) {
-                        System.out.println("cd: : No such file or directory");
-                    }
-                    String path = params.get(0);
-                    String dir;
-                    try {
-                        dir = getRelativePath(path);
-                    } catch (Exception e) {
-                        System.out.println("cd: " + path + ": No such file or directory");
-                        continue;
-                    }
-                    System.setProperty("user.dir", dir);
-                    posix.chdir(path);
-                    continue;
-                }
+    // jobs [-l]
+    private static int jobs(List<String> args, PrintStream out) {
+        boolean withPid = args.contains("-l");
+        for (JobTable.Job job : jobs.list()) {
+            out.println(jobs.format(job, jobs.marker(job), withPid));
+            if (job.isDone()) {
+                jobs.remove(job);
+            }
+        }
+        return 0;
+    }
 
-                if (pathMap.containsKey(commandName)) {
-                    // 移除空格
-                    params.removeIf(" "::equals);
-                    // 检测重定向
-                    if (params.contains(">") || params.contains("1>") || params.contains("2>")) {
-                        redirectOutput(params, commandName);
-                        continue;
-                    }
-                    if (params.contains(">>") || params.contains("1>>") || params.contains("2>>")) {
-                        redirectAppendOutput(params, commandName);
-                        continue;
-                    }
-                    if (params.contains("|")) {
-                        pipelineOutput(params, commandName);
-                        continue;
-                    }
-                    params.add(0, commandName);
-                    Process process = Runtime.getRuntime().exec(params.toArray(new String[0]));
-                    // 得到process的输出的方式是getInputStream，这是因为我们要从Java 程序的角度来看，外部程序的输出对于Java来说就是输入，反之亦然。
-                    // 外部程序在执行结束后需自动关闭，否则不管是字符流还是字节流均由于既读不到数据，又读不到流结束符，从而出现阻塞Java进程运行的情况
-                    // 如果exec启动的Process没有正确处理（stdout/stderr 有一个未读，进程未 waitFor），导致资源没关闭、管道没释放，于是 JVM
-                    // 内部执行挂起（或资源耗尽），从而将会影响到下一次exec
-                    // Java只有一套 System.in/out/err（线程共享JVM的所有资源），线程可以自己创建别的流如FileOutputStream，这些都是线程自己持有的对象，不是“线程独立 IO”
-                    // 遇到process流阻塞通常有两个方法解决，一个是并发处理两个流信息，开启两个线程分别处理输出流与错误流（仅在同一个线程处理两个流依旧会发生阻塞，因为尽管看上去同步但仍有先后顺序，所以必须用线程并发）
-                    // 2.将两个流合并为一个流，使用ProcessBuilder，将其redirectErrorStream(true)；将输出流与错误流合并
-                    DealProcessStream out = new DealProcessStream(process.getInputStream());
-                    DealProcessStream err = new DealProcessStream(process.getErrorStream());
-                    out.start();
-                    err.start();
-                    out.join();
-                    err.join();
-                    process.waitFor();
-                    continue;
-                }
-                System.out.println(input + ": command not found");
+    // wait [%n|pid ...]：不带参数时等待全部作业，返回 0；否则返回最后一个指定作业的退出码
+    private static int waitJobs(List<String> args, PrintStream err) throws InterruptedException {
+        if (args.isEmpty()) {
+            for (JobTable.Job job : jobs.list()) {
+                job.waitFor();
+                jobs.remove(job);
             }
+            return 0;
         }
+        int status = 0;
+        for (String spec : args) {
+            JobTable.Job job = jobs.find(spec);
+            if (job == null) {
+                err.println(spec.startsWith("%") ? "wait: " + spec + ": no such job" : "wait: pid " + spec + " is not a child of this shell");
+                status = 127;
+                continue;
+            }
+            status = job.waitFor();
+            jobs.remove(job);
+        }
+        return status;
     }
 
-    // 检测到重定向标识符进行输出重定向。方法抽象
-    public static Map<String, String> getEnv() {
-        Map<String, String> env = new HashMap<>();
-        String osName = System.getProperty("os.name").toLowerCase();
-        String PATH = System.getenv("PATH");
-        String[] paths;
-        if(osName.contains("win")){
-            paths = PATH.split(";");
-        } else {
-            paths = PATH.split(":");
+    // fg：shell 没有作业控制——后台作业与 shell 在同一个进程组，启动时标准输入已接到 /dev/null，
+    // 无法把终端和标准输入交还给它，因此与没有作业控制的 sh 一样只报错。等待作业用 wait %n，继续被暂停的作业用 bg %n
+    private static int fg(PrintStream err) {
+        err.println("fg: no job control");
+        return 1;
+    }
+
+    // bg [%n]：让被暂停（如 kill -STOP）的作业在后台继续运行
+    private static int bg(List<String> args, PrintStream out, PrintStream err) {
+        JobTable.Job job = jobs.find(args.isEmpty() ? null : args.get(0));
+        if (job == null) {
+            err.println("bg: " + (args.isEmpty() ? "current" : args.get(0)) + ": no such job");
+            return 1;
+        }
+        if (job.state() != JobTable.State.STOPPED) {
+            err.println("bg: job " + job.id() + " already in background");
+            return 0;
         }
+        resume(job);
+        out.println("[" + job.id() + "]" + jobs.marker(job) + " " + job.command() + " &");
+        return 0;
+    }
 
-        for(String path : paths){
-            File parent = new File(path);
-            if(parent.exists()) {
-                if(parent.isDirectory()) {
-                    Map<String, String> fileNameMap = Arrays.stream(Objects.requireNonNull(parent.listFiles((dir, name) -> new File(dir, name).isFile())))
-                                                        .filter(File::canExecute)
-                                                        .collect(Collectors.toMap(file -> file.getName().lastIndexOf(".") != -1 ?
-                                                                                          file.getName().substring(0, file.getName().lastIndexOf(".")) : file.getName(),
-                                                                                  File::getAbsolutePath,
-                                                                                  (v1, v2) -> v2));
-                    if(!fileNameMap.isEmpty()){
-                        env.putAll(fileNameMap);
-                    }
-                } else {
-                    if(parent.canExecute()) {
-                        String fileName = parent.getName().lastIndexOf(".") != -1 ?
-                                parent.getName().substring(0, parent.getName().lastIndexOf(".")) : parent.getName();
-                        env.put(fileName, parent.getAbsolutePath());
-                    }
-                }
-            }
+    private static void resume(JobTable.Job job) {
+        if (job.state() != JobTable.State.STOPPED) {
+            return;
+        }
+        for (long pid : job.pids()) {
+            Posix.get().kill((int) pid, Signal.SIGCONT.intValue());
         }
-        return env;
     }
 
-    private static void redirectOutput(List<String> params, String commandName) throws Exception {
-        // 检测重定向
-        if(params.contains(">") || params.contains("1>") || params.contains("2>")) {
-            // 移除空格
-            params.removeIf(" "::equals);
-            boolean isRedirect = false;
-            boolean stderr = false;
-            String redirectFileName = params.get(params.size() - 1);
-            List<String> beforeRedirect = new ArrayList<>();
-            for(String param : params) {
-                if(param.equals(">") || param.equals("1>") || param.equals("2>")) {
-                    isRedirect = true;
-                    if(param.equals("2>")) {
-                        stderr = true;
-                    }
-                }
-                if(!isRedirect) {
-                    beforeRedirect.add(param);
-                }
-            }
-            beforeRedirect.add(0, commandName);
-            if(isRedirect) {
-                ProcessBuilder processBuilder = new ProcessBuilder(beforeRedirect);
+    private static int echo(List<String> args, InputStream in, PrintStream out, PrintStream err) {
+        out.println(String.join(" ", args));
+        return 0;
+    }
 
-                if(!stderr) {
-                    processBuilder.redirectOutput(new File(redirectFileName));
-                    Process process = processBuilder.start();
-                    DealProcessStream err = new DealProcessStream(process.getErrorStream());
-                    err.start();
-                    err.join();
-                    process.waitFor();
-                } else {
-                    processBuilder.redirectError(new File(redirectFileName));
-                    Process process = processBuilder.start();
-                    DealProcessStream out = new DealProcessStream(process.getInputStream());
-                    out.start();
-                    out.join();
-                    process.waitFor();
-                }
+    private static int exit(List<String> args, InputStream in, PrintStream out, PrintStream err) {
+        int status = 0;
+        if (!args.isEmpty()) {
+            try {
+                status = Integer.parseInt(args.get(0));
+            } catch (NumberFormatException e) {
+                err.println("exit: " + args.get(0) + ": numeric argument required");
+                status = 2;
             }
         }
+        exitRequested = true;
+        exitStatus = status;
+        return status;
     }
 
-    // 检测>>，追加输出到文件内容末尾
-    private static void redirectAppendOutput(List<String> params, String commandName) throws Exception {
-        // 检测重定向
-        if(params.contains(">>") || params.contains("1>>") || params.contains("2>>")) {
-            // 移除空格
-            params.removeIf(" "::equals);
-            boolean isRedirect = false;
-            boolean stderr = false;
-            String redirectFileName = params.get(params.size() - 1);
-            List<String> beforeRedirect = new ArrayList<>();
-            for(String param : params) {
-                if(param.equals(">>") || param.equals("1>>") || param.equals("2>>")) {
-                    isRedirect = true;
-                    if(param.equals("2>>")) {
-                        stderr = true;
-                    }
-                }
-                if(!isRedirect) {
-                    beforeRedirect.add(param);
-                }
+    private static int type(List<String> args, PrintStream out, BuiltinRegistry builtins, CommandHash commandHash) {
+        for (String arg : args) {
+            if ("time".equals(arg)) {
+                out.println(arg + " is a shell keyword");
+                continue;
             }
-            beforeRedirect.add(0, commandName);
-            if(isRedirect) {
-                ProcessBuilder processBuilder = new ProcessBuilder(beforeRedirect);
+            if (builtins.isBuiltin(arg)) {
+                out.println(arg + " is a shell builtin");
+                continue;
+            }
+            String path = commandHash.lookup(arg);
+            if (path != null) {
+                out.println(arg + " is " + path);
+                continue;
+            }
+            out.println(arg + ": not found");
+        }
+        return 0;
+    }
 
-                if(!stderr) {
-                    processBuilder.redirectOutput(ProcessBuilder.Redirect.appendTo(new File(redirectFileName)));
-                    Process process = processBuilder.start();
-                    DealProcessStream err = new DealProcessStream(process.getErrorStream());
-                    err.start();
-                    err.join();
-                    process.waitFor();
-                } else {
-                    processBuilder.redirectError(ProcessBuilder.Redirect.appendTo(new File(redirectFileName)));
-                    Process process = processBuilder.start();
-                    DealProcessStream out = new DealProcessStream(process.getInputStream());
-                    out.start();
-                    out.join();
-                    process.waitFor();
-                }
+    private static int cd(List<String> args, PrintStream err) {
+        if (args.isEmpty()) {
+            err.println("cd: : No such file or directory");
+            return 1;
+        }
+        String path = args.get(0);
+        String dir;
+        try {
+            dir = getRelativePath(path);
+        } catch (Exception e) {
+            err.println("cd: " + path + ": No such file or directory");
+            return 1;
+        }
+        System.setProperty("user.dir", dir);
+        // 使用posix用以动态切换工作目录
+        Posix.get().chdir(dir);
+        return 0;
+    }
+
+    private static int history(List<String> params, PrintStream out, History history) throws IOException {
+        if (params.isEmpty()) {
+            for (History.Entry entry : history) {
+                out.println("    " + (entry.index() + 1) + "  " + entry.line());
+            }
+        } else if (params.size() > 1) {
+            String historyFilePathStr = params.get(1);
+            if ("-r".equals(params.get(0))) {
+                history.read(Paths.get(historyFilePathStr), false);
+            } else if ("-w".equals(params.get(0))) {
+                history.write(Paths.get(historyFilePathStr), false);
+            } else if ("-a".equals(params.get(0))) {
+                history.append(Paths.get(historyFilePathStr), true);
+            }
+        } else {
+            int count = Integer.parseInt(params.get(0));
+            // 只打印最后 count 条；下标是逻辑编号，最旧的条目被淘汰后 first() 随之增长
+            int last = history.last();
+            for (int i = Math.max(history.first(), last - count + 1); i <= last; i++) {
+                String line = history.get(i);
+                out.println("    " + (i + 1) + "  " + line);
             }
         }
+        return 0;
     }
 
-    private static void pipelineOutput(List<String> params, String commandName) throws Exception {
-        // 检测管道输入
-        if(params.contains("|")) {
-            List<String> commands = new ArrayList<>();
-            commands.add("sh");
-            commands.add("-c");
-            params.add(0, commandName);
-            String input = String.join(" ", params);
-            commands.add(input);
-            // sh -c 允许用户在命令行中直接运行一段字符串形式的 Shell 脚本或命令
-            Process process = new ProcessBuilder(commands).start();
-            DealProcessStream out = new DealProcessStream(process.getInputStream());
-            out.start();
-            out.join();
-            process.waitFor();
+    // hash [-r] [-d name] [-t name] [name ...]：查看、添加、清空命令哈希表
+    private static int hash(List<String> params, PrintStream out, PrintStream err, CommandHash commandHash) {
+        if (params.isEmpty()) {
+            List<String> lines = commandHash.describe();
+            if (lines.isEmpty()) {
+                out.println("hash: hash table empty");
+            }
+            for (String line : lines) {
+                out.println(line);
+            }
+            return 0;
+        }
+        int status = 0;
+        String option = params.get(0);
+        if ("-r".equals(option)) {
+            commandHash.reset();
+            return 0;
+        }
+        if ("-d".equals(option) || "-t".equals(option)) {
+            for (String name : params.subList(1, params.size())) {
+                if ("-d".equals(option) ? !commandHash.remove(name) : commandHash.remembered(name) == null) {
+                    err.println("hash: " + name + ": not found");
+                    status = 1;
+                } else if ("-t".equals(option)) {
+                    out.println(commandHash.remembered(name));
+                }
+            }
+            return status;
+        }
+        for (String name : params) {
+            if (!commandHash.add(name)) {
+                err.println("hash: " + name + ": not found");
+                status = 1;
+            }
         }
+        return status;
     }
 
     // 解析相对路径
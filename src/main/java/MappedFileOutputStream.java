@@ -0,0 +1,71 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+// 通过内存映射写文件：按 REGION_SIZE 分段映射，写入只是内存拷贝，由内核在后台落盘；
+// 映射会先把文件扩展到整段长度，关闭时再截断到实际写入的位置。
+// 需要对目标文件有读写权限，不能用于 /dev/null、管道等不支持映射的文件
+public class MappedFileOutputStream extends OutputStream {
+
+    private static final long REGION_SIZE = Long.getLong("shell.redirect.mmap.region", 8 * 1024 * 1024);
+
+    private final FileChannel channel;
+
+    private MappedByteBuffer region;
+
+    private long regionStart;
+
+    // 文件中下一个要写的位置
+    private long position;
+
+    public MappedFileOutputStream(File file, boolean append) throws IOException {
+        channel = append
+                ? FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                                   StandardOpenOption.TRUNCATE_EXISTING);
+        position = append ? channel.size() : 0;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureRegion();
+        region.put((byte) b);
+        position++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            ensureRegion();
+            int n = Math.min(len, region.remaining());
+            region.put(b, off, n);
+            position += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    private void ensureRegion() throws IOException {
+        if (region == null || !region.hasRemaining()) {
+            regionStart = position;
+            region = channel.map(FileChannel.MapMode.READ_WRITE, regionStart, REGION_SIZE);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        try {
+            // 去掉映射时多扩出来的部分
+            region = null;
+            channel.truncate(position);
+        } finally {
+            channel.close();
+        }
+    }
+}
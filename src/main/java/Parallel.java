@@ -0,0 +1,235 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// parallel 内建命令：把命令模板套用到每个输入上，用 N 个工作线程并发执行。
+// 每个作业的输出先缓冲，默认按输入顺序输出；-u 时哪个作业先结束就先输出它的全部内容（作业之间不会交错）。
+// 作业与普通命令一样经过 Pipeline 执行，PATH 查找、内建命令和重定向的行为完全一致
+//
+//   parallel [-j N] [-u] [--joblog FILE] command [args...] [::: input...]
+//
+// 没有 ::: 时从标准输入逐行读取输入。模板中的 {} 替换为输入，{.} 去掉扩展名，{/} 取文件名，{#} 为作业序号；
+// 模板中没有任何占位符时，输入追加为最后一个参数。模板只有一个单词时（如 'gzip -c {} > {}.gz'）按命令行解析，
+// 可以包含管道和重定向，此时输入会被加上引号再代入
+public class Parallel implements Builtin {
+
+    private final BuiltinRegistry builtins;
+
+    private final CommandHash commandHash;
+
+    public Parallel(BuiltinRegistry builtins, CommandHash commandHash) {
+        this.builtins = builtins;
+        this.commandHash = commandHash;
+    }
+
+    // 一个作业的结果
+    private static class Result {
+        private final int                   seq;
+        // 展开后的 argv；模板按命令行处理时为 null
+        private final List<String>          argv;
+        // 展开后的命令行，用于显示
+        private final String                command;
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+        private int  status;
+        private long startMillis;
+        private long elapsedMillis;
+
+        Result(int seq, List<String> argv, String command) {
+            this.seq = seq;
+            this.argv = argv;
+            this.command = command;
+        }
+    }
+
+    @Override
+    public int execute(List<String> args, InputStream in, PrintStream out, PrintStream err) throws Exception {
+        int jobs = Runtime.getRuntime().availableProcessors();
+        boolean ordered = true;
+        String joblog = null;
+        int i = 0;
+        for (; i < args.size(); i++) {
+            String arg = args.get(i);
+            if ("-j".equals(arg) || "--jobs".equals(arg)) {
+                if (++i >= args.size()) {
+                    return usage(err);
+                }
+                jobs = parseJobs(args.get(i), err);
+            } else if (arg.startsWith("-j") && arg.length() > 2) {
+                jobs = parseJobs(arg.substring(2), err);
+            } else if ("-u".equals(arg) || "--unordered".equals(arg)) {
+                ordered = false;
+            } else if ("-k".equals(arg) || "--keep-order".equals(arg)) {
+                ordered = true;
+            } else if ("--joblog".equals(arg)) {
+                if (++i >= args.size()) {
+                    return usage(err);
+                }
+                joblog = args.get(i);
+            } else {
+                break;
+            }
+        }
+        if (jobs < 1) {
+            // 无效的 -j 已由 parseJobs 报告
+            return 2;
+        }
+        int separator = args.subList(i, args.size()).indexOf(":::");
+        List<String> template = separator < 0 ? args.subList(i, args.size()) : args.subList(i, i + separator);
+        if (template.isEmpty()) {
+            return usage(err);
+        }
+        List<String> inputs = separator < 0 ? readLines(in) : args.subList(i + separator + 1, args.size());
+
+        ExecutorService workers = Executors.newFixedThreadPool(Math.min(jobs, Math.max(1, inputs.size())), daemonThreads());
+        CompletionService<Result> completion = new ExecutorCompletionService<>(workers);
+        List<Future<Result>> futures = new ArrayList<>(inputs.size());
+        long start = System.currentTimeMillis();
+        try {
+            for (int seq = 1; seq <= inputs.size(); seq++) {
+                List<String> words = expand(template, inputs.get(seq - 1), seq);
+                Result result = template.size() == 1
+                        ? new Result(seq, null, words.get(0))
+                        : new Result(seq, words, String.join(" ", words));
+                futures.add(completion.submit(() -> run(result)));
+            }
+            int failed = 0;
+            try (PrintStream log = joblog != null ? new PrintStream(new FileOutputStream(joblog), false, StandardCharsets.UTF_8.name()) : null) {
+                if (log != null) {
+                    log.println("Seq\tStarttime\tJobRuntime\tExitval\tCommand");
+                }
+                for (int n = 0; n < futures.size(); n++) {
+                    Result result = ordered ? futures.get(n).get() : completion.take().get();
+                    out.write(result.out.toByteArray());
+                    out.flush();
+                    err.write(result.err.toByteArray());
+                    if (result.status != 0) {
+                        failed++;
+                        err.println("parallel: job " + result.seq + " exited with status " + result.status + ": " + result.command);
+                    }
+                    err.flush();
+                    if (log != null) {
+                        log.printf("%d\t%.3f\t%.3f\t%d\t%s%n", result.seq, (result.startMillis - start) / 1000.0,
+                                   result.elapsedMillis / 1000.0, result.status, result.command);
+                    }
+                }
+            }
+            // 与 GNU parallel 一致：退出码为失败的作业数，最多 101
+            return Math.min(failed, 101);
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private Result run(Result result) {
+        result.startMillis = System.currentTimeMillis();
+        long started = System.nanoTime();
+        try {
+            List<List<Command>> pipelines = new ArrayList<>();
+            if (result.argv == null) {
+                for (CommandLine.Entry entry : Parser.parse(result.command).entries()) {
+                    pipelines.add(entry.commands());
+                }
+            } else {
+                Command command = new Command();
+                result.argv.forEach(command::addWord);
+                pipelines.add(Collections.singletonList(command));
+            }
+            for (List<Command> commands : pipelines) {
+                Pipeline pipeline = Pipeline.of(commands, builtins, commandHash);
+                pipeline.captureOutput(result.out, result.err);
+                // 作业的标准输入为 /dev/null，内建阶段也在工作线程之外执行
+                pipeline.start(true);
+                result.status = pipeline.waitFor();
+            }
+        } catch (IllegalArgumentException | IOException e) {
+            new PrintStream(result.err, true).println(e.getMessage());
+            result.status = e instanceof IOException ? 126 : 2;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.status = 130;
+        }
+        result.elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        return result;
+    }
+
+    /**
+     * 代入一个输入。单个单词的模板按命令行处理，输入加单引号，结果只有一个元素；否则逐个单词替换得到 argv。
+     */
+    static List<String> expand(List<String> template, String input, int seq) {
+        boolean commandLine = template.size() == 1;
+        boolean substituted = false;
+        List<String> words = new ArrayList<>(template.size() + 1);
+        for (String word : template) {
+            String expanded = substitute(word, input, seq, commandLine);
+            substituted |= !expanded.equals(word);
+            words.add(expanded);
+        }
+        if (!substituted) {
+            words.add(commandLine ? quote(input) : input);
+        }
+        return commandLine ? Collections.singletonList(String.join(" ", words)) : words;
+    }
+
+    private static String substitute(String word, String input, int seq, boolean quote) {
+        if (word.indexOf('{') < 0) {
+            return word;
+        }
+        String base = input.substring(input.lastIndexOf('/') + 1);
+        int dot = input.lastIndexOf('.');
+        String noExtension = dot > input.lastIndexOf('/') ? input.substring(0, dot) : input;
+        return word.replace("{#}", String.valueOf(seq))
+                   .replace("{.}", quote ? quote(noExtension) : noExtension)
+                   .replace("{/}", quote ? quote(base) : base)
+                   .replace("{}", quote ? quote(input) : input);
+    }
+
+    private static String quote(String value) {
+        return "'" + value.replace("'", "'\\''") + "'";
+    }
+
+    private static List<String> readLines(InputStream in) throws IOException {
+        List<String> lines = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!line.isEmpty()) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    private static int parseJobs(String value, PrintStream err) {
+        int jobs;
+        try {
+            jobs = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            jobs = -1;
+        }
+        if (jobs < 0) {
+            err.println("parallel: " + value + ": invalid number of jobs");
+            return -1;
+        }
+        // -j 0 表示不限制，这里取 CPU 数的 4 倍
+        return jobs == 0 ? 4 * Runtime.getRuntime().availableProcessors() : jobs;
+    }
+
+    private static int usage(PrintStream err) {
+        err.println("usage: parallel [-j N] [-u] [--joblog FILE] command [args...] [::: input...]");
+        return 2;
+    }
+
+    private static ThreadFactory daemonThreads() {
+        AtomicInteger threadId = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "parallel-" + threadId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,88 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// 语法分析：按顺序消费 Lexer 产生的词法单元构造 CommandLine，每个单元只看一次
+public class Parser {
+
+    private Parser() {}
+
+    /**
+     * @throws IllegalArgumentException 语法错误，消息与 bash 一致
+     */
+    public static CommandLine parse(String line) {
+        List<Token> tokens = Lexer.tokenize(line);
+        CommandLine commandLine = new CommandLine();
+        List<Command> pipeline = new ArrayList<>();
+        Command command = new Command();
+        // 当前管道以保留字 time 开头
+        boolean timed = false;
+        // 当前管道在输入行中的起止位置
+        int start = -1;
+        int end = -1;
+        for (int i = 0; i < tokens.size(); i++) {
+            Token token = tokens.get(i);
+            if (token.type() != Token.Type.SEPARATOR) {
+                if (start < 0) {
+                    start = token.start();
+                }
+                end = token.end();
+            }
+            switch (token.type()) {
+                case WORD:
+                    // 与 bash 一样，time 只在管道开头、且没有被引用时才是保留字
+                    if (!timed && pipeline.isEmpty() && command.isEmpty() && "time".equals(token.raw())) {
+                        timed = true;
+                        break;
+                    }
+                    command.addWord(token.text());
+                    break;
+                case REDIRECT:
+                    if (i + 1 >= tokens.size()) {
+                        throw unexpected("newline");
+                    }
+                    Token target = tokens.get(++i);
+                    if (target.type() != Token.Type.WORD) {
+                        throw unexpected(target.raw());
+                    }
+                    command.addRedirect(new Redirect(token.fd(), target.text(), token.isAppend()));
+                    end = target.end();
+                    break;
+                case PIPE:
+                    if (command.isEmpty()) {
+                        throw unexpected(token.raw());
+                    }
+                    pipeline.add(command);
+                    command = new Command();
+                    break;
+                case SEPARATOR:
+                    if (command.isEmpty() && !(timed && pipeline.isEmpty())) {
+                        throw unexpected(token.raw());
+                    }
+                    if (!command.isEmpty()) {
+                        pipeline.add(command);
+                    }
+                    commandLine.add(pipeline, "&".equals(token.raw()), timed, line.substring(start, end));
+                    pipeline = new ArrayList<>();
+                    command = new Command();
+                    timed = false;
+                    start = -1;
+                    break;
+            }
+        }
+        if (!command.isEmpty()) {
+            pipeline.add(command);
+            commandLine.add(pipeline, false, timed, line.substring(start, end));
+        } else if (timed && pipeline.isEmpty()) {
+            // 单独的 time：计时一个空命令
+            commandLine.add(pipeline, false, true, line.substring(start, end));
+        } else if (!pipeline.isEmpty()) {
+            // 以 | 结尾
+            throw unexpected("newline");
+        }
+        return commandLine;
+    }
+
+    private static IllegalArgumentException unexpected(String token) {
+        return new IllegalArgumentException("syntax error near unexpected token `" + token + "'");
+    }
+}
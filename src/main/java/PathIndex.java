@@ -0,0 +1,373 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+// PATH 中全部命令名的索引，只服务于 Tab 补全；执行命令时的查找由 CommandHash 按需完成，不依赖这里的扫描结果。
+// 各目录在后台线程中并行扫描（NFS 上的目录不会拖慢其它目录），结果写入并发有序集合，补全器每次读取时都能看到已扫描的部分。
+// 扫描结果连同各目录的 mtime 持久化到缓存文件，下次启动只重新扫描 mtime 变化过的目录
+public class PathIndex {
+
+    private static final int CACHE_MAGIC   = 0x53504958; // "SPIX"
+    private static final int CACHE_VERSION = 1;
+
+    private static final boolean WINDOWS = System.getProperty("os.name").toLowerCase().contains("win");
+
+    private static final int SCAN_THREADS = Integer.getInteger("shell.path.scan.threads", 8);
+
+    // 单个目录的扫描结果，按 mtime 失效
+    private static class DirListing {
+        private final long        modified;
+        private final Set<String> names;
+
+        DirListing(long modified, Set<String> names) {
+            this.modified = modified;
+            this.names = names;
+        }
+    }
+
+    private final List<File> dirs = new ArrayList<>();
+
+    private final Map<File, DirListing> listings = new ConcurrentHashMap<>();
+
+    private final NavigableSet<String> names = new ConcurrentSkipListSet<>();
+
+    // 不来自 PATH 却同样参与补全的名字（内建命令），目录重新扫描时不会被移除
+    private final Set<String> extra = ConcurrentHashMap.newKeySet();
+
+    private final ExecutorService scanner;
+
+    private final AtomicInteger pending = new AtomicInteger();
+
+    // 已提交、尚未扫描完的目录；同一目录同时只扫描一次，避免两次扫描争用 listings 和删除名字的计算
+    private final Set<File> inFlight = ConcurrentHashMap.newKeySet();
+
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    // 首次补全时最多等待扫描完成的时间，超时后先返回已扫描的部分
+    private static final long FIRST_USE_WAIT_MILLIS = Long.getLong("shell.path.scan.wait", 100);
+
+    private final CountDownLatch scanned = new CountDownLatch(1);
+
+    private final File cacheFile;
+
+    // 有目录被重新扫描过，缓存需要回写
+    private volatile boolean dirty;
+
+    private volatile int cachedDirs;
+    // 由各扫描线程并发累加
+    private final AtomicInteger scannedDirs = new AtomicInteger();
+
+    private volatile long scanStarted;
+    private volatile long scanFinished;
+
+    public PathIndex() {
+        this(System.getenv("PATH"), defaultCacheFile());
+    }
+
+    /**
+     * @param path      PATH 变量的值
+     * @param cacheFile 缓存文件，为 null 时不读写缓存
+     */
+    public PathIndex(String path, File cacheFile) {
+        this.cacheFile = cacheFile;
+        if (path != null) {
+            for (String dir : path.split(File.pathSeparator)) {
+                if (!dir.isEmpty()) {
+                    dirs.add(new File(dir));
+                }
+            }
+        }
+        AtomicInteger threadId = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(SCAN_THREADS, SCAN_THREADS, 5, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "path-scan-" + threadId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 扫描完成后线程自行退出
+        executor.allowCoreThreadTimeOut(true);
+        scanner = executor;
+    }
+
+    // -Dshell.path.cache 指定缓存文件，设为 none 关闭；默认 $XDG_CACHE_HOME/simpleshell/path-index
+    private static File defaultCacheFile() {
+        String configured = System.getProperty("shell.path.cache");
+        if (configured != null) {
+            return "none".equals(configured) ? null : new File(configured);
+        }
+        String cacheHome = System.getenv("XDG_CACHE_HOME");
+        if (cacheHome == null || cacheHome.isEmpty()) {
+            String home = System.getProperty("user.home");
+            if (home == null) {
+                return null;
+            }
+            cacheHome = home + File.separator + ".cache";
+        }
+        return new File(new File(cacheHome, "simpleshell"), "path-index");
+    }
+
+    /**
+     * 在后台加载缓存并并行扫描 mtime 有变化（或缓存中没有）的 PATH 目录，立即返回。
+     */
+    public void start() {
+        if (!started.compareAndSet(false, true)) {
+            return;
+        }
+        scanStarted = System.nanoTime();
+        pending.incrementAndGet();
+        scanner.execute(() -> {
+            try {
+                Map<File, DirListing> cached = readCache();
+                for (File dir : dirs) {
+                    DirListing listing = cached.get(dir);
+                    if (listing != null && listing.modified == dir.lastModified()) {
+                        listings.put(dir, listing);
+                        names.addAll(listing.names);
+                        cachedDirs++;
+                    } else {
+                        submit(dir);
+                    }
+                }
+            } finally {
+                finish();
+            }
+        });
+    }
+
+    /**
+     * 把内建命令等不在 PATH 中的名字并入索引：补全直接使用 names() 这一个有序集合，不必每次合并、排序。
+     * 不会触发扫描。
+     */
+    public void include(Collection<String> extraNames) {
+        extra.addAll(extraNames);
+        names.addAll(extraNames);
+    }
+
+    /**
+     * 当前已知的全部命令名（有序、只读、随扫描进度增长，含 include 并入的名字）。第一次调用时才开始加载，并短暂等待扫描完成；
+     * 之后每次调用顺带检查各目录的 mtime，有变化的目录在后台重新扫描。
+     */
+    public NavigableSet<String> names() {
+        if (!started.get()) {
+            start();
+            try {
+                scanned.await(FIRST_USE_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (File dir : dirs) {
+            DirListing listing = listings.get(dir);
+            if (listing != null && listing.modified != dir.lastModified()) {
+                submit(dir);
+            }
+        }
+        return Collections.unmodifiableNavigableSet(names);
+    }
+
+    public boolean isComplete() {
+        return pending.get() == 0 && scanFinished != 0;
+    }
+
+    // 首次完整扫描耗时（毫秒），尚未完成时返回 -1
+    public long scanMillis() {
+        return scanFinished == 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(scanFinished - scanStarted);
+    }
+
+    // 从缓存直接采用的目录数
+    public int cachedDirs() {
+        return cachedDirs;
+    }
+
+    // 实际列出过的目录数
+    public int scannedDirs() {
+        return scannedDirs.get();
+    }
+
+    public String describe() {
+        return String.format("path-index: complete=%b scan-ms=%d cached-dirs=%d scanned-dirs=%d",
+                isComplete(), scanMillis(), cachedDirs(), scannedDirs());
+    }
+
+    // 该目录已有扫描在排队或进行中时不再提交；扫描开始时读取 mtime，之后的变化由下一次检查发现
+    private void submit(File dir) {
+        if (!inFlight.add(dir)) {
+            return;
+        }
+        pending.incrementAndGet();
+        scanner.execute(() -> {
+            try {
+                scan(dir);
+            } finally {
+                inFlight.remove(dir);
+                finish();
+            }
+        });
+    }
+
+    private void finish() {
+        if (pending.decrementAndGet() != 0) {
+            return;
+        }
+        if (scanFinished == 0) {
+            scanFinished = System.nanoTime();
+            scanned.countDown();
+            StartupProfile.lazy("path-index", scanStarted);
+        }
+        if (dirty) {
+            dirty = false;
+            writeCache();
+        }
+    }
+
+    private void scan(File dir) {
+        long modified = dir.lastModified();
+        DirListing previous = listings.get(dir);
+        if (previous != null && previous.modified == modified) {
+            return;
+        }
+        DirListing listing = new DirListing(modified, list(dir));
+        listings.put(dir, listing);
+        scannedDirs.incrementAndGet();
+        dirty = true;
+        names.addAll(listing.names);
+        if (previous != null) {
+            // 目录中被删除的命令，只有在其它目录里也不存在时才从索引中去掉
+            Set<String> removed = new HashSet<>(previous.names);
+            listing.names.forEach(removed::remove);
+            for (String name : removed) {
+                if (!extra.contains(name) && !existsElsewhere(name, dir)) {
+                    names.remove(name);
+                }
+            }
+        }
+    }
+
+    private boolean existsElsewhere(String name, File except) {
+        for (Map.Entry<File, DirListing> entry : listings.entrySet()) {
+            if (!entry.getKey().equals(except) && entry.getValue().names.contains(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 缓存格式：magic、版本、目录数，每个目录依次为路径、mtime、命令数和排好序的命令名；
+    // 命令名做前缀压缩（与前一个名字相同前缀的长度 + 剩余部分），末尾是 CRC32 校验。
+    // 文件损坏、版本不符或读取出错时整体忽略，全部目录重新扫描
+    private Map<File, DirListing> readCache() {
+        Map<File, DirListing> cached = new HashMap<>();
+        if (cacheFile == null || !cacheFile.isFile()) {
+            return cached;
+        }
+        try {
+            // 先整体校验 CRC，再解析内容，避免按损坏的长度字段分配内存
+            byte[] bytes = Files.readAllBytes(cacheFile.toPath());
+            if (bytes.length < Long.BYTES) {
+                return cached;
+            }
+            int length = bytes.length - Long.BYTES;
+            CRC32 crc = new CRC32();
+            crc.update(bytes, 0, length);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            in.skipBytes(length);
+            if (in.readLong() != crc.getValue()) {
+                return cached;
+            }
+            in = new DataInputStream(new ByteArrayInputStream(bytes, 0, length));
+            if (in.readInt() != CACHE_MAGIC || in.readInt() != CACHE_VERSION) {
+                return cached;
+            }
+            int dirCount = in.readInt();
+            for (int i = 0; i < dirCount; i++) {
+                File dir = new File(in.readUTF());
+                long modified = in.readLong();
+                int count = in.readInt();
+                Set<String> dirNames = new HashSet<>(count * 2);
+                String previous = "";
+                for (int j = 0; j < count; j++) {
+                    int shared = in.readUnsignedByte();
+                    String name = previous.substring(0, shared) + in.readUTF();
+                    dirNames.add(name);
+                    previous = name;
+                }
+                cached.put(dir, new DirListing(modified, dirNames));
+            }
+            return cached;
+        } catch (IOException | RuntimeException e) {
+            return new HashMap<>();
+        }
+    }
+
+    private synchronized void writeCache() {
+        if (cacheFile == null) {
+            return;
+        }
+        try {
+            File parent = cacheFile.getAbsoluteFile().getParentFile();
+            if (!parent.isDirectory() && !parent.mkdirs()) {
+                return;
+            }
+            Path temp = Files.createTempFile(parent.toPath(), cacheFile.getName(), ".tmp");
+            try {
+                CRC32 crc = new CRC32();
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                        new CheckedOutputStream(new FileOutputStream(temp.toFile()), crc), 64 * 1024))) {
+                    Map<File, DirListing> snapshot = new HashMap<>(listings);
+                    out.writeInt(CACHE_MAGIC);
+                    out.writeInt(CACHE_VERSION);
+                    out.writeInt(snapshot.size());
+                    for (Map.Entry<File, DirListing> entry : snapshot.entrySet()) {
+                        out.writeUTF(entry.getKey().getPath());
+                        out.writeLong(entry.getValue().modified);
+                        List<String> sorted = new ArrayList<>(entry.getValue().names);
+                        Collections.sort(sorted);
+                        out.writeInt(sorted.size());
+                        String previous = "";
+                        for (String name : sorted) {
+                            int shared = 0;
+                            int max = Math.min(255, Math.min(previous.length(), name.length()));
+                            while (shared < max && previous.charAt(shared) == name.charAt(shared)) {
+                                shared++;
+                            }
+                            out.writeByte(shared);
+                            out.writeUTF(name.substring(shared));
+                            previous = name;
+                        }
+                    }
+                    out.flush();
+                    out.writeLong(crc.getValue());
+                }
+                Files.move(temp, cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException | RuntimeException e) {
+            // 缓存只是加速手段，写失败不影响使用
+        }
+    }
+
+    private static Set<String> list(File dir) {
+        Set<String> result = new HashSet<>();
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return result;
+        }
+        for (File file : files) {
+            if (file.isFile() && file.canExecute()) {
+                String name = file.getName();
+                // Windows 下与原实现一致，补全时去掉扩展名
+                if (WINDOWS && name.lastIndexOf('.') > 0) {
+                    name = name.substring(0, name.lastIndexOf('.'));
+                }
+                result.add(name);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,433 @@
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+// 一条命令行的执行：单个命令就是只有一个阶段的管道。
+// 外部命令由 shell 自己启动，相邻的外部阶段之间直接用操作系统管道相连（ProcessBuilder.startPipeline 或 posix_spawn），数据不经过 JVM 拷贝；
+// 内建命令在 shell 进程内执行，它的输入输出接到相邻外部阶段的管道、重定向文件或终端上
+public class Pipeline {
+
+    private static final File NULL_FILE = new File(System.getProperty("os.name").toLowerCase().contains("win") ? "NUL" : "/dev/null");
+
+    // 启动时的标准输出/错误流，即进程真正的 fd 1/2
+    private static final PrintStream TERMINAL_OUT = System.out;
+    private static final PrintStream TERMINAL_ERR = System.err;
+
+    private static class Stage {
+        private final String       name;
+        // 不含命令名
+        private final List<String> args;
+        // 外部命令为 null
+        private final Builtin      builtin;
+        // 外部命令的可执行文件路径
+        private String   path;
+        private Redirect stdout;
+        private Redirect stderr;
+
+        private Process process;
+        // 内建命令写往下一个内建命令的进程内管道
+        private Pipe    pipeToNext;
+        private int     status;
+
+        Stage(String name, List<String> args, Builtin builtin) {
+            this.name = name;
+            this.args = args;
+            this.builtin = builtin;
+        }
+
+        boolean isBuiltin() {
+            return builtin != null;
+        }
+    }
+
+    private final List<Stage> stages = new ArrayList<>();
+
+    private final List<Process> processes = new ArrayList<>();
+
+    // 内建阶段与输出转发任务
+    private final List<Future<?>> tasks = new ArrayList<>();
+
+    // 与 tasks 一一对应，任务结束时完成
+    private final List<CompletableFuture<Void>> done = new ArrayList<>();
+
+    private boolean background;
+
+    // 子进程输出的转发任务，结束后从中读取转发量
+    private final List<DealProcessStream> pumps = new ArrayList<>();
+
+    // 各阶段的耗时：查找命令（内建命令表与命令哈希）、启动外部进程
+    private long resolveNanos;
+    private long spawnNanos;
+
+    // 不为 null 时，最后一个阶段的标准输出与各阶段的标准错误写到这里而不是终端（用于捕获输出）
+    private OutputStream outSink;
+    private OutputStream errSink;
+
+    private Pipeline() {}
+
+    /**
+     * 由语法树中的一个管道构造执行计划。
+     *
+     * @param commands    以 | 相连的各个简单命令
+     * @param builtins    内建命令注册表，同名时优先于 PATH 中的程序
+     * @param commandHash 命令哈希表
+     */
+    public static Pipeline of(List<Command> commands, BuiltinRegistry builtins, CommandHash commandHash) {
+        long start = System.nanoTime();
+        Pipeline pipeline = new Pipeline();
+        for (Command command : commands) {
+            pipeline.addStage(command, builtins, commandHash);
+        }
+        pipeline.resolveNanos = System.nanoTime() - start;
+        return pipeline;
+    }
+
+    private void addStage(Command command, BuiltinRegistry builtins, CommandHash commandHash) {
+        String name = command.getCommandName();
+        List<String> args = new ArrayList<>(command.getArgs());
+        Builtin builtin;
+        String path = null;
+        if (name == null) {
+            // 只有重定向（如 "> file"）：打开目标文件即完成，不执行任何命令
+            name = "";
+            builtin = (a, in, out, err) -> 0;
+        } else {
+            builtin = builtins.get(name, args);
+            path = builtin == null ? commandHash.lookup(name) : null;
+            if (builtin == null && path == null) {
+                String missing = name;
+                builtin = (a, in, out, err) -> {
+                    err.println(missing + ": command not found");
+                    return 127;
+                };
+            }
+        }
+        Stage stage = new Stage(name, args, builtin);
+        stage.path = path;
+        // 同一个 fd 多次重定向时以最后一个为准
+        for (Redirect redirect : command.getRedirects()) {
+            if (redirect.fd() == 2) {
+                stage.stderr = redirect;
+            } else {
+                stage.stdout = redirect;
+            }
+        }
+        stages.add(stage);
+    }
+
+    /**
+     * 把管道的输出改写到给定的流，在 start 之前调用。文件重定向仍然优先。
+     */
+    public void captureOutput(OutputStream out, OutputStream err) {
+        this.outSink = out;
+        this.errSink = err;
+    }
+
+    /**
+     * 启动所有阶段并等待其全部结束。
+     *
+     * @return 最后一个阶段的退出码
+     */
+    public int run() throws IOException, InterruptedException {
+        start(false);
+        return waitFor();
+    }
+
+    /**
+     * 启动所有阶段后立即返回（单个前台内建命令除外，它直接在当前线程执行完）。
+     *
+     * @param background 后台执行：第一个阶段从 /dev/null 读取，内建阶段也在其它线程执行
+     */
+    public void start(boolean background) throws IOException {
+        this.background = background;
+        // 先把 JVM 中尚未写出的内容刷到终端，保证与子进程输出的先后顺序
+        System.out.flush();
+        System.err.flush();
+        int last = stages.size() - 1;
+        if (!background && last == 0 && stages.get(0).isBuiltin()) {
+            // 最常见的情况：单个内建命令直接在当前线程执行
+            runBuiltin(stages.get(0), System.in, null);
+            return;
+        }
+
+        try {
+            long spawnStart = System.nanoTime();
+            startProcesses();
+            spawnNanos = System.nanoTime() - spawnStart;
+            for (int i = 0; i <= last; i++) {
+                Stage stage = stages.get(i);
+                if (!stage.isBuiltin()) {
+                    continue;
+                }
+                if (i < last && stages.get(i + 1).isBuiltin()) {
+                    stage.pipeToNext = Pipe.open();
+                }
+                InputStream in = upstreamOf(i);
+                OutputStream next = i == last ? null
+                        : stage.pipeToNext != null ? Channels.newOutputStream(stage.pipeToNext.sink())
+                        : stages.get(i + 1).process.getOutputStream();
+                submit(() -> {
+                    try {
+                        runBuiltin(stage, in, next);
+                    } catch (IOException e) {
+                        System.err.println(e.getMessage());
+                        stage.status = 1;
+                    }
+                });
+            }
+        } catch (IOException e) {
+            // 任何一个阶段启动失败，已经启动的阶段也一并结束，避免留下读不到输入的孤儿进程
+            for (Process process : processes) {
+                process.destroy();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 等待所有阶段结束。
+     *
+     * @return 最后一个阶段的退出码
+     */
+    public int waitFor() throws InterruptedException {
+        for (Future<?> task : tasks) {
+            DrainExecutor.await(task);
+        }
+        for (Stage stage : stages) {
+            if (stage.process != null) {
+                stage.status = stage.process.waitFor();
+            }
+        }
+        return lastStatus();
+    }
+
+    /**
+     * 所有阶段结束时完成，调用方不必占用等待线程：子进程由 Process.onExit 通知（posix_spawn 启动的来自 ChildReaper 的单个回收线程，
+     * ProcessBuilder 启动的来自 JDK 为每个进程保留的回收线程），内建阶段在执行它的线程结束时通知。
+     */
+    public CompletableFuture<Integer> onExit() {
+        List<CompletableFuture<?>> parts = new ArrayList<>(done);
+        for (Process process : processes) {
+            parts.add(process.onExit());
+        }
+        return CompletableFuture.allOf(parts.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            for (Stage stage : stages) {
+                if (stage.process != null) {
+                    stage.status = stage.process.exitValue();
+                }
+            }
+            return lastStatus();
+        });
+    }
+
+    // 没有任何阶段（单独的 time）时为 0
+    private int lastStatus() {
+        return stages.isEmpty() ? 0 : stages.get(stages.size() - 1).status;
+    }
+
+    // 已启动的子进程 pid，按阶段顺序；启动失败的阶段（FailedProcess）没有 pid，不在其中
+    public List<Long> pids() {
+        List<Long> pids = new ArrayList<>();
+        for (Process process : processes) {
+            if (process.pid() > 0) {
+                pids.add(process.pid());
+            }
+        }
+        return pids;
+    }
+
+    public long resolveNanos() {
+        return resolveNanos;
+    }
+
+    public long spawnNanos() {
+        return spawnNanos;
+    }
+
+    // shell 转发子进程输出的字节数，在 waitFor 之后读取
+    public long drainedBytes() {
+        long bytes = 0;
+        for (DealProcessStream pump : pumps) {
+            bytes += pump.bytes();
+        }
+        return bytes;
+    }
+
+    // shell 转发子进程输出所花的时间，在 waitFor 之后读取
+    public long drainNanos() {
+        long nanos = 0;
+        for (DealProcessStream pump : pumps) {
+            nanos += pump.nanos();
+        }
+        return nanos;
+    }
+
+    /**
+     * 各子进程自己的资源用量之和（maxrss 取最大）。只有全部子进程都由 posix_spawn 启动、能用 wait4 回收时才知道，否则为 null。
+     */
+    public ResourceUsage childUsage() {
+        ResourceUsage total = ResourceUsage.ZERO;
+        for (Process process : processes) {
+            if (process instanceof FailedProcess) {
+                continue;
+            }
+            ResourceUsage usage = process instanceof SpawnedProcess ? ((SpawnedProcess) process).usage() : null;
+            if (usage == null) {
+                return null;
+            }
+            total = total.plus(usage);
+        }
+        return total;
+    }
+
+    private void submit(Runnable task) {
+        CompletableFuture<Void> finished = new CompletableFuture<>();
+        done.add(finished);
+        tasks.add(DrainExecutor.submit(() -> {
+            try {
+                task.run();
+            } finally {
+                finished.complete(null);
+            }
+        }));
+    }
+
+    // 相邻的外部阶段作为一组，用 startPipeline 一次性启动并串接（启动方式见 ProcessLauncher）；内建阶段或输出被重定向到文件的阶段会断开分组
+    private void startProcesses() throws IOException {
+        int last = stages.size() - 1;
+        List<Stage> group = new ArrayList<>();
+        List<ProcessBuilder> builders = new ArrayList<>();
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i <= last; i++) {
+            Stage stage = stages.get(i);
+            if (!stage.isBuiltin()) {
+                List<String> argv = new ArrayList<>();
+                argv.add(stage.name);
+                argv.addAll(stage.args);
+                ProcessBuilder builder = new ProcessBuilder(argv);
+                if (group.isEmpty()) {
+                    // 组首：整条管道的第一个阶段继承终端输入（后台执行时读到空输入）；前面是内建命令时由它写入；前一阶段输出已重定向到文件时读到空输入
+                    builder.redirectInput(i == 0 ? (background ? ProcessBuilder.Redirect.from(NULL_FILE) : ProcessBuilder.Redirect.INHERIT)
+                            : stages.get(i - 1).isBuiltin() ? ProcessBuilder.Redirect.PIPE
+                            : ProcessBuilder.Redirect.from(NULL_FILE));
+                }
+                if (stage.stdout != null) {
+                    builder.redirectOutput(stage.stdout.toProcessRedirect());
+                } else if (i == last) {
+                    builder.redirectOutput(outSink != null ? ProcessBuilder.Redirect.PIPE : terminal(System.out, TERMINAL_OUT));
+                }
+                builder.redirectError(stage.stderr != null ? stage.stderr.toProcessRedirect()
+                        : errSink != null ? ProcessBuilder.Redirect.PIPE : terminal(System.err, TERMINAL_ERR));
+                group.add(stage);
+                builders.add(builder);
+                paths.add(stage.path);
+            }
+            boolean endOfGroup = stage.isBuiltin() || stage.stdout != null || i == last;
+            if (endOfGroup && !group.isEmpty()) {
+                List<Process> started = ProcessLauncher.startPipeline(builders, paths);
+                for (int j = 0; j < started.size(); j++) {
+                    Stage member = group.get(j);
+                    member.process = started.get(j);
+                    processes.add(member.process);
+                    pump(member);
+                }
+                group = new ArrayList<>();
+                builders = new ArrayList<>();
+                paths = new ArrayList<>();
+            }
+        }
+    }
+
+    // 子进程默认直接继承 shell 的终端 fd（Redirect.INHERIT），不创建转发线程；
+    // 只有当 System.out/System.err 被替换为 JVM 内部的流（需要捕获输出）时才改用管道并由 DrainExecutor 转发
+    private static ProcessBuilder.Redirect terminal(PrintStream current, PrintStream terminal) {
+        return current == terminal ? ProcessBuilder.Redirect.INHERIT : ProcessBuilder.Redirect.PIPE;
+    }
+
+    private void pump(Stage stage) {
+        boolean lastStage = stage == stages.get(stages.size() - 1);
+        if (lastStage && stage.stdout == null && (outSink != null || System.out != TERMINAL_OUT)) {
+            drain(new DealProcessStream(stage.process.getInputStream(), outSink != null ? outSink : System.out));
+        }
+        if (stage.stderr == null && (errSink != null || System.err != TERMINAL_ERR)) {
+            drain(new DealProcessStream(stage.process.getErrorStream(), errSink != null ? errSink : System.err));
+        }
+    }
+
+    private void drain(DealProcessStream drain) {
+        pumps.add(drain);
+        submit(drain);
+    }
+
+    private InputStream upstreamOf(int index) {
+        if (index == 0) {
+            return background ? new ByteArrayInputStream(new byte[0]) : System.in;
+        }
+        Stage previous = stages.get(index - 1);
+        if (previous.stdout != null) {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+        if (previous.pipeToNext != null) {
+            return Channels.newInputStream(previous.pipeToNext.source());
+        }
+        return previous.process.getInputStream();
+    }
+
+    /**
+     * 执行内建阶段。
+     *
+     * @param next 写往下一阶段的流，最后一个阶段为 null
+     */
+    private void runBuiltin(Stage stage, InputStream in, OutputStream next) throws IOException {
+        ShellOutput out = null;
+        PrintStream err = null;
+        try {
+            try {
+                out = stage.stdout != null ? stage.stdout.open()
+                        : stage.pipeToNext != null ? ShellOutput.of(stage.pipeToNext.sink())
+                        : next != null ? ShellOutput.of(next)
+                        : outSink != null ? ShellOutput.of(outSink)
+                        : ShellOutput.stdout(TERMINAL_OUT);
+                err = stage.stderr != null ? stage.stderr.open()
+                        : errSink != null ? new PrintStream(errSink, true)
+                        : System.err;
+            } catch (IOException e) {
+                // 重定向文件打不开：与 sh 一样不执行命令，退出码为 1
+                PrintStream shellErr = errSink != null ? new PrintStream(errSink, true) : System.err;
+                shellErr.println(e.getMessage());
+                shellErr.flush();
+                stage.status = 1;
+                return;
+            }
+            try {
+                stage.status = stage.builtin.execute(stage.args, in, out, err);
+            } catch (IOException | RuntimeException e) {
+                err.println(stage.name + ": " + e.getMessage());
+                stage.status = 1;
+            } catch (Exception e) {
+                err.println(stage.name + ": " + e);
+                stage.status = 1;
+            }
+        } finally {
+            // 关闭写往下一阶段或重定向文件的流，下游才能读到 EOF（写往终端时只 flush）；关闭来自上游的流，让仍在写的上游收到 SIGPIPE。
+            // 重定向打开失败时同样要关闭已经打开的流和写往下一阶段的流，否则下游永远等不到 EOF
+            if (out != null) {
+                out.flush();
+                out.close();
+            }
+            if (next != null) {
+                next.close();
+            }
+            if (err != null && err != System.err) {
+                err.close();
+            }
+            if (in != System.in) {
+                in.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+import jnr.posix.POSIX;
+import jnr.posix.POSIXFactory;
+
+// 共享的 jnr-posix 实例。加载本地绑定有代价，cd、bg 和 posix_spawn 启动器第一次用到时才初始化
+public final class Posix {
+
+    private Posix() {}
+
+    private static final class Holder {
+        private static final POSIX POSIX;
+
+        static {
+            long start = System.nanoTime();
+            POSIX = POSIXFactory.getPOSIX(new PosixHandler(), true);
+            StartupProfile.lazy("posix", start);
+        }
+    }
+
+    public static POSIX get() {
+        return Holder.POSIX;
+    }
+}
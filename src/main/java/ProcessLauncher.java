@@ -0,0 +1,285 @@
+import jnr.constants.platform.Fcntl;
+import jnr.constants.platform.OpenFlags;
+import jnr.posix.POSIX;
+import jnr.posix.SpawnFileAction;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 外部命令的启动方式。默认用 ProcessBuilder.startPipeline；set -o posix_spawn（或 -Dshell.spawn=posix_spawn）时
+// 改为通过 jnr-posix 直接调用 posix_spawn：重定向与管道都写成 file actions，由 libc 在子进程 exec 之前完成，
+// 不经过 JDK 的 jspawnhelper，启动耗时也不随 JVM 堆的大小增长。
+// 以 ProcessBuilder 描述每个阶段（重定向、环境变量），两种方式共用同一份配置；
+// posix_spawn 处理不了的情况（没有本地绑定、指定了工作目录、还没有任何阶段启动时 spawn 失败等）自动退回 ProcessBuilder；
+// 组内已有阶段启动后就不再整体重来，失败的阶段像 bash 一样报错并以 126/127 结束，其余阶段照常运行
+public final class ProcessLauncher {
+
+    private static final boolean WINDOWS = System.getProperty("os.name").toLowerCase().contains("win");
+
+    // fcntl(F_SETFD) 的 FD_CLOEXEC 位，jnr-constants 中没有对应常量
+    private static final int FD_CLOEXEC = 1;
+
+    private static final int CREATE_MODE = 0666;
+
+    private static final File FD_DIR = new File("/proc/self/fd");
+
+    private static final String SHELL = "/bin/sh";
+
+    // 子进程中在当前最大 fd 之上额外关闭的编号数，覆盖列出 fd 之后其它线程新开的 fd（见 closeLimit）
+    private static final int CLOSE_SLACK = 32;
+
+    private static final AtomicLong SPAWNED   = new AtomicLong();
+    private static final AtomicLong FALLBACKS = new AtomicLong();
+
+    private static volatile Boolean available;
+
+    private ProcessLauncher() {}
+
+    /**
+     * 启动一组以管道相连的外部命令，语义同 {@link ProcessBuilder#startPipeline}。
+     *
+     * @param builders 各阶段的配置，argv[0] 是用户输入的命令名
+     * @param paths    与 builders 一一对应的可执行文件路径（CommandHash 的查找结果）
+     */
+    public static List<Process> startPipeline(List<ProcessBuilder> builders, List<String> paths) throws IOException {
+        if (ShellOptions.isSet("posix_spawn")) {
+            List<Process> started = posixSpawn(builders, paths);
+            if (started != null) {
+                return started;
+            }
+            FALLBACKS.incrementAndGet();
+        }
+        return ProcessBuilder.startPipeline(builders);
+    }
+
+    public static boolean isAvailable() {
+        if (available == null) {
+            available = !WINDOWS && Posix.get().isNative();
+        }
+        return available;
+    }
+
+    // 通过 posix_spawn 启动的进程数
+    public static long spawned() {
+        return SPAWNED.get();
+    }
+
+    // 开启了 posix_spawn 但退回 ProcessBuilder 的次数
+    public static long fallbacks() {
+        return FALLBACKS.get();
+    }
+
+    /**
+     * 用 posix_spawn 启动整组命令。
+     *
+     * @return 启动的进程；无法用 posix_spawn 启动时返回 null，此时没有留下任何已启动的进程或打开的 fd
+     */
+    public static List<Process> posixSpawn(List<ProcessBuilder> builders, List<String> paths) {
+        if (!isAvailable()) {
+            return null;
+        }
+        for (int i = 0; i < builders.size(); i++) {
+            ProcessBuilder builder = builders.get(i);
+            if (paths.get(i) == null || builder.directory() != null || builder.redirectErrorStream()) {
+                return null;
+            }
+        }
+        // 串行化：管道 fd 从创建到设置 FD_CLOEXEC 之间不能被并发的另一次 spawn 继承
+        synchronized (ProcessLauncher.class) {
+            return spawnGroup(Posix.get(), builders, paths);
+        }
+    }
+
+    private static List<Process> spawnGroup(POSIX posix, List<ProcessBuilder> builders, List<String> paths) {
+        int count = builders.size();
+        // 每个阶段在子进程中的 0/1/2 来源，以及父进程一侧保留的管道 fd（没有则为 -1）
+        int[][] childFds = new int[count][3];
+        int[][] parentFds = new int[count][3];
+        for (int[] fds : childFds) {
+            Arrays.fill(fds, -1);
+        }
+        for (int[] fds : parentFds) {
+            Arrays.fill(fds, -1);
+        }
+        List<Integer> opened = new ArrayList<>();
+        long[] pids = new long[count];
+        // 启动失败的阶段的退出码，成功启动的为 0
+        int[] failed = new int[count];
+        try {
+            for (int i = 0; i < count; i++) {
+                ProcessBuilder builder = builders.get(i);
+                if (i > 0) {
+                    // 组内相邻阶段：前一个的标准输出接到这一个的标准输入
+                    int[] pipe = pipe(posix, opened);
+                    childFds[i - 1][1] = pipe[1];
+                    childFds[i][0] = pipe[0];
+                } else if (builder.redirectInput().type() == ProcessBuilder.Redirect.Type.PIPE) {
+                    int[] pipe = pipe(posix, opened);
+                    childFds[i][0] = pipe[0];
+                    parentFds[i][0] = pipe[1];
+                }
+                if (i == count - 1 && builder.redirectOutput().type() == ProcessBuilder.Redirect.Type.PIPE) {
+                    int[] pipe = pipe(posix, opened);
+                    childFds[i][1] = pipe[1];
+                    parentFds[i][1] = pipe[0];
+                }
+                if (builder.redirectError().type() == ProcessBuilder.Redirect.Type.PIPE) {
+                    int[] pipe = pipe(posix, opened);
+                    childFds[i][2] = pipe[1];
+                    parentFds[i][2] = pipe[0];
+                }
+            }
+
+            int closeLimit = closeLimit();
+            // 从最后一个阶段倒着启动，上游启动之前下游已经在读管道
+            for (int i = count - 1; i >= 0; i--) {
+                ProcessBuilder builder = builders.get(i);
+                List<SpawnFileAction> actions = new ArrayList<>();
+                addActions(actions, 0, childFds[i][0], builder.redirectInput());
+                addActions(actions, 1, childFds[i][1], builder.redirectOutput());
+                addActions(actions, 2, childFds[i][2], builder.redirectError());
+                for (int fd = 3; fd < closeLimit; fd++) {
+                    actions.add(SpawnFileAction.close(fd));
+                }
+                String path = paths.get(i);
+                List<CharSequence> envp = environment(builder);
+                long pid = posix.posix_spawnp(path, actions, builder.command(), envp);
+                if (pid <= 0 && isExecutableFile(path)) {
+                    // 文件存在且可执行却启动失败，多半是 execve 返回 ENOEXEC（没有 #! 的脚本等）。jnr 不返回 posix_spawn 的错误码，
+                    // 无法确认；JDK 遇到 ENOEXEC 时改用 /bin/sh 执行，这里同样交给 /bin/sh，两种启动方式的结果一致
+                    List<String> argv = new ArrayList<>();
+                    argv.add(SHELL);
+                    argv.add(path);
+                    argv.addAll(builder.command().subList(1, builder.command().size()));
+                    pid = posix.posix_spawnp(SHELL, actions, argv, envp);
+                }
+                if (pid <= 0) {
+                    if (i == count - 1) {
+                        // 还没有任何阶段启动，整组交给 ProcessBuilder，由它报告错误
+                        closeAll(posix, opened);
+                        return null;
+                    }
+                    // 下游已经启动并可能已有输出，不能重来：这一阶段按 bash 的方式报错，其管道两端随后关闭
+                    failed[i] = failureStatus(path);
+                    continue;
+                }
+                pids[i] = pid;
+            }
+        } catch (IOException e) {
+            closeAll(posix, opened);
+            return null;
+        }
+
+        // 子进程一侧的 fd 已经 dup 到各自的 0/1/2，父进程只保留交给 Process 的那几个（失败的阶段一个也不保留）
+        List<Integer> kept = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            for (int fd : parentFds[i]) {
+                if (fd >= 0 && failed[i] == 0) {
+                    kept.add(fd);
+                }
+            }
+        }
+        opened.removeAll(kept);
+        closeAll(posix, opened);
+
+        List<Process> started = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (failed[i] != 0) {
+                started.add(FailedProcess.report(builders.get(i), paths.get(i), failed[i]));
+                continue;
+            }
+            started.add(new SpawnedProcess(posix, pids[i], parentFds[i][0], parentFds[i][1], parentFds[i][2]));
+            SPAWNED.incrementAndGet();
+        }
+        return started;
+    }
+
+    private static boolean isExecutableFile(String path) {
+        File file = new File(path);
+        return file.isFile() && file.canExecute();
+    }
+
+    // 与 bash 相同：找不到文件为 127，其余（没有权限、是目录、格式不对）为 126
+    private static int failureStatus(String path) {
+        return new File(path).exists() ? 126 : 127;
+    }
+
+    // 子进程中把 fd 接好：有管道时 dup 过去，是文件时直接打开到目标 fd，INHERIT 时什么都不做
+    private static void addActions(List<SpawnFileAction> actions, int target, int pipeFd, ProcessBuilder.Redirect redirect) {
+        if (pipeFd >= 0) {
+            actions.add(SpawnFileAction.dup(pipeFd, target));
+            return;
+        }
+        switch (redirect.type()) {
+            case READ:
+                actions.add(SpawnFileAction.open(redirect.file().getPath(), target, OpenFlags.O_RDONLY.intValue(), 0));
+                break;
+            case WRITE:
+                actions.add(SpawnFileAction.open(redirect.file().getPath(), target,
+                        OpenFlags.O_WRONLY.intValue() | OpenFlags.O_CREAT.intValue() | OpenFlags.O_TRUNC.intValue(), CREATE_MODE));
+                break;
+            case APPEND:
+                actions.add(SpawnFileAction.open(redirect.file().getPath(), target,
+                        OpenFlags.O_WRONLY.intValue() | OpenFlags.O_CREAT.intValue() | OpenFlags.O_APPEND.intValue(), CREATE_MODE));
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static List<CharSequence> environment(ProcessBuilder builder) {
+        List<CharSequence> envp = new ArrayList<>();
+        for (Map.Entry<String, String> entry : builder.environment().entrySet()) {
+            envp.add(entry.getKey() + "=" + entry.getValue());
+        }
+        return envp;
+    }
+
+    private static int[] pipe(POSIX posix, List<Integer> opened) throws IOException {
+        int[] fds = new int[2];
+        if (posix.pipe(fds) != 0) {
+            throw new IOException("pipe failed");
+        }
+        for (int fd : fds) {
+            opened.add(fd);
+            posix.fcntl(fd, Fcntl.F_SETFD, FD_CLOEXEC);
+        }
+        return fds;
+    }
+
+    /**
+     * 子进程中要关闭的 fd 的上界（不含），没有 /proc 时为 3（不关闭任何 fd）。
+     * <p>
+     * posix_spawn 不像 JDK 那样在子进程中关闭多余的 fd，JVM 自己打开的 fd（jar、日志等）不全带 FD_CLOEXEC，
+     * 泄漏给子进程会出问题（例如持有管道写端使下游读不到 EOF）。这些 fd 可能正被其它线程使用
+     * （如另一次 ProcessBuilder 启动要交给 jspawnhelper 的管道），不能改它们的标志，只在子进程中用 close 动作关闭。
+     * <p>
+     * 列出 /proc/self/fd 与 posix_spawnp 之间，其它线程（DrainExecutor、HistoryWriter、PathIndex 等）仍可能打开新的 fd，
+     * 只关闭列出的那几个会把它们漏给子进程。内核总是分配最小的空闲编号，新 fd 不会超过当前最大编号加上同时新开的个数，
+     * 所以关闭的是 3 到最大编号再加 {@link #CLOSE_SLACK} 之间的全部编号，而不只是列出的那些：
+     * 窗口内新开的 fd 只要不超过这个余量就不会泄漏。没有打开的编号在子进程中 close 失败（EBADF），glibc 会忽略。
+     * 带 FD_CLOEXEC 的 fd 一并关闭也无妨；close 动作排在 dup 动作之后，本组管道的两端已经接到 0/1/2。
+     */
+    private static int closeLimit() {
+        String[] fds = FD_DIR.list();
+        if (fds == null) {
+            return 3;
+        }
+        int highest = 2;
+        for (String name : fds) {
+            highest = Math.max(highest, Integer.parseInt(name));
+        }
+        return highest + 1 + CLOSE_SLACK;
+    }
+
+    private static void closeAll(POSIX posix, List<Integer> fds) {
+        for (int fd : fds) {
+            posix.close(fd);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+import java.io.File;
+import java.io.IOException;
+
+// 输出重定向：> >> 1> 1>> 2> 2>>
+public class Redirect {
+    private final int     fd;
+    private final File    file;
+    private final boolean append;
+
+    public Redirect(int fd, String target, boolean append) {
+        this.fd = fd;
+        this.file = new File(target);
+        this.append = append;
+    }
+
+    public int fd() {
+        return fd;
+    }
+
+    public File file() {
+        return file;
+    }
+
+    public boolean isAppend() {
+        return append;
+    }
+
+    ProcessBuilder.Redirect toProcessRedirect() {
+        return append ? ProcessBuilder.Redirect.appendTo(file) : ProcessBuilder.Redirect.to(file);
+    }
+
+    // 内建命令在进程内直接写目标文件
+    ShellOutput open() throws IOException {
+        return ShellOutput.toFile(file, append);
+    }
+}
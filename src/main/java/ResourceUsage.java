@@ -0,0 +1,98 @@
+import jnr.ffi.LibraryLoader;
+import jnr.ffi.Platform;
+import jnr.ffi.annotations.Out;
+
+// getrusage/wait4 的结果：用户态、内核态 CPU 时间与最大常驻内存。
+// jnr-posix 没有封装这两个调用，这里用 jnr-ffi 直接绑定 libc（wait4 由 ChildReaper 在回收子进程时调用）；struct rusage 按 64 位 Linux 的布局
+// 读成 long 数组（两个 timeval 之后第一个字段即 ru_maxrss，单位 KB），其它平台上不可用
+public final class ResourceUsage {
+
+    public interface LibC {
+        int getrusage(int who, @Out long[] usage);
+    }
+
+    private static final int RUSAGE_SELF     = 0;
+    private static final int RUSAGE_CHILDREN = -1;
+
+    // struct rusage 共 18 个 long
+    private static final int RUSAGE_LONGS = 18;
+
+    public static final ResourceUsage ZERO = new ResourceUsage(0, 0, 0);
+
+    private final long userMicros;
+    private final long systemMicros;
+    private final long maxRssKb;
+
+    public ResourceUsage(long userMicros, long systemMicros, long maxRssKb) {
+        this.userMicros = userMicros;
+        this.systemMicros = systemMicros;
+        this.maxRssKb = maxRssKb;
+    }
+
+    private static final class Holder {
+        private static final LibC LIBC = load();
+
+        private static LibC load() {
+            Platform platform = Platform.getNativePlatform();
+            if (platform.getOS() != Platform.OS.LINUX || !platform.is64Bit()) {
+                return null;
+            }
+            try {
+                return LibraryLoader.create(LibC.class).load(platform.getStandardCLibraryName());
+            } catch (LinkageError | RuntimeException e) {
+                return null;
+            }
+        }
+    }
+
+    public static boolean isAvailable() {
+        return Holder.LIBC != null;
+    }
+
+    // shell 自身（JVM 进程）到目前为止的用量，不可用时为 null
+    public static ResourceUsage self() {
+        return get(RUSAGE_SELF);
+    }
+
+    // 已被回收的全部子进程的累计用量（ru_maxrss 是其中的最大值，不是累加），不可用时为 null
+    public static ResourceUsage children() {
+        return get(RUSAGE_CHILDREN);
+    }
+
+    private static ResourceUsage get(int who) {
+        LibC libc = Holder.LIBC;
+        long[] usage = new long[RUSAGE_LONGS];
+        if (libc == null || libc.getrusage(who, usage) != 0) {
+            return null;
+        }
+        return of(usage);
+    }
+
+    // 由 getrusage 或 wait4（ChildReaper）填好的 struct rusage
+    static ResourceUsage of(long[] usage) {
+        return new ResourceUsage(usage[0] * 1_000_000 + usage[1], usage[2] * 1_000_000 + usage[3], usage[4]);
+    }
+
+    // 两次 children() 之间被回收的子进程的 CPU 用量；maxrss 取较晚一次的值
+    public ResourceUsage since(ResourceUsage before) {
+        return new ResourceUsage(userMicros - before.userMicros, systemMicros - before.systemMicros, maxRssKb);
+    }
+
+    // 多个进程合计：CPU 时间相加，maxrss 取最大
+    public ResourceUsage plus(ResourceUsage other) {
+        return new ResourceUsage(userMicros + other.userMicros, systemMicros + other.systemMicros,
+                Math.max(maxRssKb, other.maxRssKb));
+    }
+
+    public long userMicros() {
+        return userMicros;
+    }
+
+    public long systemMicros() {
+        return systemMicros;
+    }
+
+    public long maxRssKb() {
+        return maxRssKb;
+    }
+}
@@ -0,0 +1,100 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// 从文件末尾向前逐行读取（UTF-8，换行为 \n，行尾的 \r 去掉）。
+// 每次从文件中向前读一块，只保留还没返回的部分，读到第 n 行时只访问了文件最后 n 行，
+// 适合只关心最新若干条的历史文件
+final class ReverseLineReader implements Closeable {
+
+    private static final int BLOCK = 64 * 1024;
+
+    private final FileChannel channel;
+
+    // buf[0, end) 对应文件 [position, position + end)，其后的内容都已返回
+    private byte[] buf = new byte[BLOCK];
+    private int end;
+    private long position;
+
+    private boolean done;
+
+    ReverseLineReader(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        position = channel.size();
+        done = position == 0;
+        // 最后一行以 \n 结尾时，不把其后的空串当作一行
+        if (!done && fill() && buf[end - 1] == '\n') {
+            end--;
+        }
+    }
+
+    /**
+     * 返回前一行（第一次调用返回最后一行）。
+     *
+     * @return 行内容，不含换行；已读到文件开头时为 null
+     */
+    String readLine() throws IOException {
+        if (done) {
+            return null;
+        }
+        int scanned = end;
+        while (true) {
+            for (int i = scanned - 1; i >= 0; i--) {
+                if (buf[i] == '\n') {
+                    String line = decode(i + 1, end);
+                    end = i;
+                    return line;
+                }
+            }
+            if (position == 0) {
+                // 文件的第一行
+                done = true;
+                return decode(0, end);
+            }
+            // 这一块里没有换行：再向前读一块，已扫描过的部分不再重复扫描
+            int before = end;
+            fill();
+            scanned = end - before;
+        }
+    }
+
+    // 向前读一块放到 buf 开头，原有的 [0, end) 后移；文件已读完时返回 false
+    private boolean fill() throws IOException {
+        int n = (int) Math.min(BLOCK, position);
+        if (n == 0) {
+            return false;
+        }
+        if (n + end > buf.length) {
+            byte[] grown = new byte[Math.max(buf.length * 2, n + end)];
+            System.arraycopy(buf, 0, grown, n, end);
+            buf = grown;
+        } else {
+            System.arraycopy(buf, 0, buf, n, end);
+        }
+        position -= n;
+        ByteBuffer target = ByteBuffer.wrap(buf, 0, n);
+        while (target.hasRemaining()) {
+            if (channel.read(target, position + target.position()) < 0) {
+                throw new IOException("file truncated while reading");
+            }
+        }
+        end += n;
+        return true;
+    }
+
+    private String decode(int from, int to) {
+        if (to > from && buf[to - 1] == '\r') {
+            to--;
+        }
+        return new String(buf, from, to - from, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,88 @@
+import java.io.PrintStream;
+import java.util.*;
+
+// set 内建命令管理的 shell 选项，按 bash 的 set -o 名称保存
+public final class ShellOptions {
+
+    // 选项名 -> 是否开启，保持 set -o 的输出顺序
+    private static final Map<String, Boolean> options = new LinkedHashMap<>();
+
+    // 单字母写法，如 set -e 等同于 set -o errexit
+    private static final Map<Character, String> flags = new HashMap<>();
+
+    static {
+        define("errexit", 'e');
+        // 外部命令改用 posix_spawn 启动，见 ProcessLauncher；也可以用 -Dshell.spawn=posix_spawn 在启动时打开
+        define("posix_spawn", (char) 0);
+        options.put("posix_spawn", "posix_spawn".equals(System.getProperty("shell.spawn")));
+        // 按命令名记录各阶段耗时，见 CommandStats；指定了导出文件时默认打开
+        define("stats", (char) 0);
+        options.put("stats", Boolean.getBoolean("shell.stats") || System.getProperty("shell.stats.file") != null);
+    }
+
+    private ShellOptions() {}
+
+    private static void define(String name, char flag) {
+        options.put(name, false);
+        if (flag != 0) {
+            flags.put(flag, name);
+        }
+    }
+
+    public static synchronized boolean isSet(String name) {
+        return options.getOrDefault(name, false);
+    }
+
+    public static synchronized void set(String name, boolean on) {
+        if (!options.containsKey(name)) {
+            throw new IllegalArgumentException(name + ": invalid option name");
+        }
+        options.put(name, on);
+    }
+
+    /**
+     * set [-e|+e] [-o name|+o name] ...：不带参数或只有 -o/+o 时列出全部选项。
+     */
+    public static int set(List<String> args, PrintStream out, PrintStream err) {
+        if (args.isEmpty()) {
+            print(out);
+            return 0;
+        }
+        for (int i = 0; i < args.size(); i++) {
+            String arg = args.get(i);
+            if (arg.length() < 2 || arg.charAt(0) != '-' && arg.charAt(0) != '+') {
+                err.println("set: " + arg + ": invalid option");
+                return 2;
+            }
+            boolean on = arg.charAt(0) == '-';
+            try {
+                if ("-o".equals(arg) || "+o".equals(arg)) {
+                    if (i + 1 >= args.size()) {
+                        print(out);
+                        continue;
+                    }
+                    set(args.get(++i), on);
+                    continue;
+                }
+                for (char flag : arg.substring(1).toCharArray()) {
+                    String name = flags.get(flag);
+                    if (name == null) {
+                        err.println("set: " + arg.charAt(0) + flag + ": invalid option");
+                        return 2;
+                    }
+                    set(name, on);
+                }
+            } catch (IllegalArgumentException e) {
+                err.println("set: " + e.getMessage());
+                return 2;
+            }
+        }
+        return 0;
+    }
+
+    private static synchronized void print(PrintStream out) {
+        for (Map.Entry<String, Boolean> option : options.entrySet()) {
+            out.printf("%-15s\t%s%n", option.getKey(), option.getValue() ? "on" : "off");
+        }
+    }
+}
@@ -0,0 +1,88 @@
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+// 内建命令的标准输出。除了 PrintStream 的文本接口，还暴露底层的通道，
+// 需要搬运大块字节的内建命令（如 cat）可以绕过字符集编码直接写入，目标是文件或终端时还能由内核完成拷贝
+public class ShellOutput extends PrintStream {
+
+    // 进程真正的 fd 1，不随 System.setOut 变化，也从不关闭
+    private static final WritableByteChannel TERMINAL = new FileOutputStream(FileDescriptor.out).getChannel();
+
+    // -Dshell.redirect.mmap=true 时重定向文件通过内存映射写入
+    private static final boolean MMAP = Boolean.getBoolean("shell.redirect.mmap");
+
+    private final WritableByteChannel channel;
+
+    // 关闭时是否一并关闭目标（重定向文件、管道）；终端只 flush
+    private final boolean closeTarget;
+
+    private ShellOutput(OutputStream out, WritableByteChannel channel, boolean closeTarget) {
+        super(out, false);
+        this.channel = channel;
+        this.closeTarget = closeTarget;
+    }
+
+    /**
+     * 写往重定向目标文件。小块的文本输出先在 JVM 内缓冲，关闭时一次写出；
+     * 开启 shell.redirect.mmap 时改为内存映射写入。
+     *
+     * @param append 是否追加（&gt;&gt;）
+     */
+    public static ShellOutput toFile(File file, boolean append) throws IOException {
+        if (MMAP) {
+            MappedFileOutputStream out = new MappedFileOutputStream(file, append);
+            return new ShellOutput(out, Channels.newChannel(out), true);
+        }
+        FileOutputStream out = new FileOutputStream(file, append);
+        // 通道直接写文件，使用前 channel() 会先 flush 缓冲区
+        return new ShellOutput(new BufferedOutputStream(out), out.getChannel(), true);
+    }
+
+    /**
+     * 写往任意流，例如下一个外部阶段的 stdin；close 时关闭该流，下游才能读到 EOF。
+     */
+    public static ShellOutput of(OutputStream out) {
+        return new ShellOutput(out, Channels.newChannel(out), true);
+    }
+
+    /**
+     * 写往通道，例如下一个内建阶段的进程内管道。
+     */
+    public static ShellOutput of(WritableByteChannel channel) {
+        return new ShellOutput(Channels.newOutputStream(channel), channel, true);
+    }
+
+    /**
+     * 写往 shell 自己的标准输出。
+     *
+     * @param terminal 启动时的 System.out；当前 System.out 仍是它时直接使用 fd 1 的通道，否则（输出被捕获）经由 System.out
+     */
+    public static ShellOutput stdout(PrintStream terminal) {
+        PrintStream current = System.out;
+        return new ShellOutput(current, current == terminal ? TERMINAL : Channels.newChannel(current), false);
+    }
+
+    /**
+     * 返回底层通道。调用前先刷出经 PrintStream 写入但尚未写出的内容，保证先后顺序。
+     */
+    public WritableByteChannel channel() throws IOException {
+        flush();
+        if (channel == TERMINAL) {
+            System.out.flush();
+        }
+        if (checkError()) {
+            throw new IOException("Broken pipe");
+        }
+        return channel;
+    }
+
+    @Override
+    public void close() {
+        if (closeTarget) {
+            super.close();
+        } else {
+            flush();
+        }
+    }
+}
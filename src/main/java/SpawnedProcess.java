@@ -0,0 +1,285 @@
+import jnr.constants.platform.Errno;
+import jnr.constants.platform.Signal;
+import jnr.posix.POSIX;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// 由 ProcessLauncher 通过 posix_spawn 启动的子进程，按 Process 的接口包装 pid 和父进程一侧的管道 fd，
+// Pipeline、JobTable 无需区分两种启动方式。
+// 退出状态由 shell 自己回收取得（64 位 Linux 上所有子进程共用 ChildReaper 的一个线程），不能交给 ProcessHandle，
+// 否则 JDK 的回收线程会抢先回收
+final class SpawnedProcess extends Process {
+
+    private static final AtomicInteger THREAD_ID = new AtomicInteger();
+
+    // 没有 ChildReaper 的平台上，每个子进程占一个阻塞在 waitpid 上的线程（与 JDK 自己的做法相同），空闲线程 30 秒后回收
+    private static final ExecutorService REAPER = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 30, TimeUnit.SECONDS,
+            new SynchronousQueue<>(), runnable -> {
+        Thread thread = new Thread(runnable, "spawn-reaper-" + THREAD_ID.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final POSIX posix;
+    private final long  pid;
+
+    private final OutputStream stdin;
+    private final InputStream  stdout;
+    private final InputStream  stderr;
+
+    private final CompletableFuture<Process> exit = new CompletableFuture<>();
+
+    private volatile int exitCode;
+
+    // wait4 取得的该进程资源用量，不可用时为 null
+    private volatile ResourceUsage usage;
+
+    /**
+     * @param stdinFd  写往子进程标准输入的管道 fd，没有管道时为 -1；stdoutFd、stderrFd 同理
+     */
+    SpawnedProcess(POSIX posix, long pid, int stdinFd, int stdoutFd, int stderrFd) {
+        this.posix = posix;
+        this.pid = pid;
+        this.stdin = stdinFd < 0 ? OutputStream.nullOutputStream() : new FdOutputStream(posix, stdinFd);
+        this.stdout = stdoutFd < 0 ? InputStream.nullInputStream() : new FdInputStream(posix, stdoutFd);
+        this.stderr = stderrFd < 0 ? InputStream.nullInputStream() : new FdInputStream(posix, stderrFd);
+        if (ChildReaper.isAvailable()) {
+            ChildReaper.watch(pid, this::exited);
+        } else {
+            REAPER.execute(this::reap);
+        }
+    }
+
+    // ChildReaper 回收后调用；status 为 -1 表示已经被别处回收，状态无从得知
+    private void exited(int status, ResourceUsage usage) {
+        this.usage = usage;
+        exitCode = status < 0 ? 1 : decode(status);
+        exit.complete(this);
+    }
+
+    private void reap() {
+        int[] status = new int[1];
+        while (true) {
+            int result = posix.waitpid(pid, status, 0);
+            if (result == pid) {
+                exitCode = decode(status[0]);
+                break;
+            }
+            if (result < 0 && posix.errno() != Errno.EINTR.intValue()) {
+                // ECHILD：已经被别处回收，状态无从得知
+                exitCode = 1;
+                break;
+            }
+        }
+        exit.complete(this);
+    }
+
+    // 与 JDK 一致：正常退出取低 8 位退出码，被信号终止时为 128 + 信号编号
+    private static int decode(int status) {
+        int signal = status & 0x7f;
+        return signal == 0 ? (status >> 8) & 0xff : 128 + signal;
+    }
+
+    /**
+     * 进程结束后它自己的 CPU 时间与最大常驻内存；尚未结束或平台不支持时为 null。
+     */
+    public ResourceUsage usage() {
+        return usage;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return stdin;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return stdout;
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+        return stderr;
+    }
+
+    @Override
+    public int waitFor() throws InterruptedException {
+        try {
+            exit.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        return exitCode;
+    }
+
+    @Override
+    public boolean waitFor(long timeout, TimeUnit unit) throws InterruptedException {
+        try {
+            exit.get(timeout, unit);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @Override
+    public int exitValue() {
+        if (!exit.isDone()) {
+            throw new IllegalThreadStateException("process hasn't exited");
+        }
+        return exitCode;
+    }
+
+    @Override
+    public boolean isAlive() {
+        return !exit.isDone();
+    }
+
+    @Override
+    public CompletableFuture<Process> onExit() {
+        return exit;
+    }
+
+    @Override
+    public long pid() {
+        return pid;
+    }
+
+    @Override
+    public void destroy() {
+        signal(Signal.SIGTERM);
+    }
+
+    @Override
+    public Process destroyForcibly() {
+        signal(Signal.SIGKILL);
+        return this;
+    }
+
+    @Override
+    public boolean supportsNormalTermination() {
+        return true;
+    }
+
+    private void signal(Signal signal) {
+        // 已回收的 pid 可能被复用，不再发送信号
+        if (!exit.isDone()) {
+            posix.kill(pid, signal.intValue());
+        }
+    }
+
+    // 直接读写管道 fd；fd 不是 JVM 打开的，FileInputStream 无法接管。
+    // 转发方（DealProcessStream）不关闭子进程的输出流，因此读到 EOF 时自行关闭 fd，之后的读取都返回 -1
+    private static final class FdInputStream extends InputStream {
+        private final POSIX posix;
+        private final int   fd;
+        private boolean closed;
+
+        FdInputStream(POSIX posix, int fd) {
+            this.posix = posix;
+            this.fd = fd;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                return -1;
+            }
+            if (len == 0) {
+                return 0;
+            }
+            byte[] target = off == 0 ? b : new byte[len];
+            int n;
+            do {
+                n = posix.read(fd, target, len);
+            } while (n < 0 && posix.errno() == Errno.EINTR.intValue());
+            if (n < 0) {
+                throw new IOException(Errno.valueOf(posix.errno()).description());
+            }
+            if (n == 0) {
+                close();
+                return -1;
+            }
+            if (target != b) {
+                System.arraycopy(target, 0, b, off, n);
+            }
+            return n;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                posix.close(fd);
+            }
+        }
+    }
+
+    private static final class FdOutputStream extends OutputStream {
+        private final POSIX posix;
+        private final int   fd;
+        private boolean closed;
+
+        FdOutputStream(POSIX posix, int fd) {
+            this.posix = posix;
+            this.fd = fd;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            byte[] source = b;
+            if (off != 0) {
+                source = new byte[len];
+                System.arraycopy(b, off, source, 0, len);
+            }
+            int written = 0;
+            while (written < len) {
+                byte[] rest = written == 0 ? source : Arrays.copyOfRange(source, written, len);
+                int n = posix.write(fd, rest, len - written);
+                if (n < 0) {
+                    if (posix.errno() == Errno.EINTR.intValue()) {
+                        continue;
+                    }
+                    // 与 FileOutputStream 一致，读端已关闭时报 Broken pipe（JVM 忽略 SIGPIPE）
+                    throw new IOException(Errno.valueOf(posix.errno()).description());
+                }
+                written += n;
+            }
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                posix.close(fd);
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// 启动耗时统计。使用 --profile-startup 参数或 -Dshell.startup.profile=true 时，
+// 在第一个提示符出现前把各初始化步骤的耗时打印到 stderr；延迟初始化的子系统在第一次用到时再各自打印一行
+public final class StartupProfile {
+
+    // Main 类加载时即记录，作为 main 入口的时间点
+    private static final long MAIN_START = System.nanoTime();
+
+    private static volatile boolean enabled = Boolean.getBoolean("shell.startup.profile");
+
+    private static final List<String> phases = new ArrayList<>();
+    private static final List<Long>   phaseNanos = new ArrayList<>();
+
+    private static long lastMark = MAIN_START;
+
+    private static volatile long firstPrompt;
+
+    private StartupProfile() {}
+
+    static void touch() {
+        // 仅用于在 main 入口触发类加载，使 MAIN_START 尽可能早
+    }
+
+    public static void enable() {
+        enabled = true;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 记录一个初始化步骤结束，耗时从上一次 mark（或 main 入口）算起。
+     */
+    public static synchronized void mark(String phase) {
+        long now = System.nanoTime();
+        phases.add(phase);
+        phaseNanos.add(now - lastMark);
+        lastMark = now;
+    }
+
+    /**
+     * 延迟初始化的子系统完成初始化时调用。
+     *
+     * @param subsystem   子系统名称
+     * @param startNanos  开始初始化时的 System.nanoTime()
+     */
+    public static void lazy(String subsystem, long startNanos) {
+        if (enabled) {
+            System.err.printf("startup: lazy %-16s %8.1f ms%n", subsystem, (System.nanoTime() - startNanos) / 1e6);
+        }
+    }
+
+    /**
+     * 第一个提示符即将显示时调用，之后的调用忽略。
+     */
+    public static void firstPrompt() {
+        if (firstPrompt != 0) {
+            return;
+        }
+        mark("line-reader");
+        firstPrompt = System.nanoTime();
+        if (enabled) {
+            print();
+        }
+    }
+
+    // 从 main 入口到第一个提示符的毫秒数，提示符尚未出现（或批处理模式）时返回 -1；stats 与 Prometheus 导出中报告
+    public static long timeToFirstPromptMillis() {
+        return firstPrompt == 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(firstPrompt - MAIN_START);
+    }
+
+    private static synchronized void print() {
+        // 进程启动到 main 入口（JVM 自身启动与类加载），操作系统只提供较粗的精度
+        ProcessHandle.current().info().startInstant().ifPresent(start -> {
+            long sinceStart = Duration.between(start, Instant.now()).toNanos();
+            long jvm = sinceStart - (System.nanoTime() - MAIN_START);
+            System.err.printf("startup: %-21s %8.1f ms%n", "jvm (approx)", jvm / 1e6);
+        });
+        for (int i = 0; i < phases.size(); i++) {
+            System.err.printf("startup: %-21s %8.1f ms%n", phases.get(i), phaseNanos.get(i) / 1e6);
+        }
+        System.err.printf("startup: %-21s %8.1f ms%n", "time-to-first-prompt", (firstPrompt - MAIN_START) / 1e6);
+    }
+}
@@ -0,0 +1,124 @@
+// 词法单元。只记录在输入行中的起止位置，不复制文本；单词的值（去掉引号和转义后）在需要时才生成
+public class Token {
+
+    public enum Type {
+        // 普通单词，可能含引号和反斜杠转义
+        WORD,
+        // |
+        PIPE,
+        // > >> 1> 1>> 2> 2>>
+        REDIRECT,
+        // ; 或 &
+        SEPARATOR
+    }
+
+    private final Type    type;
+    private final String  line;
+    private final int     start;
+    private final int     end;
+    // 仅 REDIRECT：被重定向的文件描述符与是否追加
+    private final int     fd;
+    private final boolean append;
+    // 仅 WORD：是否含有引号或转义，不含时单词的值就是原文
+    private final boolean quoted;
+
+    private Token(Type type, String line, int start, int end, int fd, boolean append, boolean quoted) {
+        this.type = type;
+        this.line = line;
+        this.start = start;
+        this.end = end;
+        this.fd = fd;
+        this.append = append;
+        this.quoted = quoted;
+    }
+
+    static Token word(String line, int start, int end, boolean quoted) {
+        return new Token(Type.WORD, line, start, end, -1, false, quoted);
+    }
+
+    static Token operator(Type type, String line, int start, int end) {
+        return new Token(type, line, start, end, -1, false, false);
+    }
+
+    static Token redirect(String line, int start, int end, int fd, boolean append) {
+        return new Token(Type.REDIRECT, line, start, end, fd, append, false);
+    }
+
+    public Type type() {
+        return type;
+    }
+
+    public int start() {
+        return start;
+    }
+
+    public int end() {
+        return end;
+    }
+
+    public int fd() {
+        return fd;
+    }
+
+    public boolean isAppend() {
+        return append;
+    }
+
+    /**
+     * 在输入行中的原文，例如 "a b"'c' 或 2>>。
+     */
+    public String raw() {
+        return line.substring(start, end);
+    }
+
+    /**
+     * 单词的值：去掉引号，处理反斜杠转义。
+     * 单引号内原样保留；双引号内只有 \" \\ \$ \` 会转义，其它反斜杠保留；引号外反斜杠转义任意字符
+     */
+    public String text() {
+        if (!quoted) {
+            return raw();
+        }
+        StringBuilder value = new StringBuilder(end - start);
+        int i = start;
+        while (i < end) {
+            char c = line.charAt(i);
+            if (c == '\\') {
+                if (i + 1 < end) {
+                    value.append(line.charAt(i + 1));
+                }
+                i += 2;
+            } else if (c == '\'') {
+                int close = line.indexOf('\'', i + 1);
+                value.append(line, i + 1, close);
+                i = close + 1;
+            } else if (c == '"') {
+                i++;
+                while (line.charAt(i) != '"') {
+                    char d = line.charAt(i);
+                    if (d == '\\' && isDoubleQuoteEscape(line.charAt(i + 1))) {
+                        value.append(line.charAt(i + 1));
+                        i += 2;
+                    } else {
+                        value.append(d);
+                        i++;
+                    }
+                }
+                i++;
+            } else {
+                value.append(c);
+                i++;
+            }
+        }
+        return value.toString();
+    }
+
+    static boolean isDoubleQuoteEscape(char c) {
+        return c == '"' || c == '\\' || c == '$' || c == '`';
+    }
+
+    @Override
+    public String toString() {
+        return type + "(" + raw() + ")";
+    }
+}